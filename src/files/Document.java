@@ -5,6 +5,8 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.*;
 
 import imageprocessing.ImageProcessing;
+import imageprocessing.ImageStatistics;
+import imageprocessing.particles.AnalyzedParticles;
 
 /**
  * Image document class
@@ -18,6 +20,8 @@ public class Document {
 	private int m_fileType;		// image file type
 	private ImageData m_image;	// image data
 	private int m_imageType;	// image type
+	private ImageStatistics m_statistics;	// lazily computed statistics of the image
+	private AnalyzedParticles m_particles;	// particles analyzed in the image or null
 	
 	public Document() {
 		m_fileType = SWT.IMAGE_UNDEFINED;
@@ -30,6 +34,8 @@ public class Document {
 		m_fileName = null;
 		m_file = null;
 		m_image = null;
+		m_statistics = null;
+		m_particles = null;
 		m_fileType = SWT.IMAGE_UNDEFINED;
 		m_imageType = 0;
 	}
@@ -89,6 +95,31 @@ public class Document {
 		return m_image;
 	}
 	
+	/**
+	 * Returns the statistics of this image. They are computed on demand and
+	 * dropped when the image is replaced.
+	 * @return statistics or null if there isn't an image
+	 */
+	public ImageStatistics getStatistics() {
+		return m_statistics;
+	}
+	
+	/**
+	 * Returns the analyzed particles of this image
+	 * @return particles or null if the image hasn't been analyzed
+	 */
+	public AnalyzedParticles getParticles() {
+		return m_particles;
+	}
+	
+	/**
+	 * Attaches analyzed particles to this image. They are dropped when the image is replaced.
+	 * @param particles particles of this image or null
+	 */
+	public void setParticles(AnalyzedParticles particles) {
+		m_particles = particles;
+	}
+	
 	/**
 	 * Returns the image type of this image
 	 * @return
@@ -160,12 +191,14 @@ public class Document {
 	}
 
 	/**
-	 * Set or reset image
+	 * Set or reset image. The statistics and particles of the previous image are dropped, even if imageData is the same object.
 	 * @param imageData
 	 */
 	public void setImage(ImageData imageData) {
 		m_image = imageData;
 		m_imageType = ImageProcessing.determineImageType(imageData);
+		m_statistics = new ImageStatistics(imageData, m_imageType);
+		m_particles = null;
 	}
 
 }
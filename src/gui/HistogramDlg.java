@@ -27,7 +27,7 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 
-import imageprocessing.ImageProcessing;
+import imageprocessing.ImageStatistics;
 import main.Picsi;
 
 /**
@@ -254,20 +254,18 @@ public class HistogramDlg extends Dialog {
 			}
 		}
 		
-    	// update histogram and statistic
+    	// update histogram and statistic: the histograms are cached in the document
+    	final ImageStatistics statistics = views.getDocument(!m_outputBtn.getSelection()).getStatistics();
     	if (m_imageType == Picsi.IMAGE_TYPE_RGB) {
     		if (m_selectedChannel == RGBHist) {
-    			m_hist = new int[3][];
-    			m_hist[0] = ImageProcessing.histogramRGB(m_imageData, 0);
-    			m_hist[1] = ImageProcessing.histogramRGB(m_imageData, 1);
-    			m_hist[2] = ImageProcessing.histogramRGB(m_imageData, 2);
+    			m_hist = Arrays.copyOf(statistics.histogramRGB(), 3);
     		} else {
     			m_hist = new int[1][];
-    			m_hist[0] = ImageProcessing.histogramRGB(m_imageData, m_selectedChannel);
+    			m_hist[0] = statistics.histogram(m_selectedChannel);
     		}
     	} else {
 			m_hist = new int[1][];
-    		m_hist[0] = ImageProcessing.histogram(m_imageData, 1 << Math.min(8, m_imageData.depth));
+    		m_hist[0] = statistics.histogram();
     	}
     	m_stat = Arrays.stream(m_hist[0]).summaryStatistics();
     	
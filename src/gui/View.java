@@ -20,6 +20,7 @@ import org.eclipse.swt.printing.PrinterData;
 import org.eclipse.swt.widgets.*;
 
 import files.Document;
+import imageprocessing.particles.AnalyzedParticles;
 
 /**
  * Viewer class
@@ -575,12 +576,30 @@ public class View extends Canvas {
 		
 		if (m_twins.useMeanColor()) {
 			data = getPixelInfoAt(event.x,  event.y, MeanAreaRad);
-			m_twins.m_mainWnd.showPixelInfo(data, true);
+			m_twins.m_mainWnd.showPixelInfo(addParticleInfo(data), true);
 		} else {
 			data = getPixelInfoAt(event.x,  event.y, 0);
-			m_twins.m_mainWnd.showPixelInfo(data, false);
+			m_twins.m_mainWnd.showPixelInfo(addParticleInfo(data), false);
 		}
 		if (data != null) m_clipboardText = (String)data[View.PixelInfo.RGBformatted.ordinal()];
 
 	}
+
+	/**
+	 * Appends the particle under the cursor, if the particles of the image of this view have been analyzed
+	 * @param data pixel info or null
+	 * @return pixel info
+	 */
+	private Object[] addParticleInfo(Object[] data) {
+		AnalyzedParticles particles = m_twins.getDocument(m_firstView).getParticles();
+
+		if (data != null && particles != null) {
+			int i = particles.particleAt((Integer)data[PixelInfo.X.ordinal()], (Integer)data[PixelInfo.Y.ordinal()]);
+			if (i >= 0) {
+				data = data.clone();
+				data[data.length - 1] = data[data.length - 1] + " - " + particles.describe(i);
+			}
+		}
+		return data;
+	}
 }
@@ -1,15 +1,26 @@
 package imageprocessing;
 
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.RGB;
 
+import files.Document;
+import gui.OptionPane;
+import gui.TwinView;
+import imageprocessing.buffer.BitImage;
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.buffer.IntegralImage;
+import imageprocessing.buffer.PackedBinaryImage;
+import imageprocessing.colors.GrayscaleImage;
 import main.Picsi;
 import utils.Parallel;
 
 /**
- * Image segmentation (binarization) using Otsu's method
+ * Image segmentation (binarization) using Otsu's method, or multi-level Otsu for more than two segments.
+ * Adaptive binarization uses local thresholds (mean-C, Niblack, Sauvola, Bradley-Roth) computed on integral images.
+ * Both menu entries use the same polarity: pixels brighter than the (local) threshold become foreground.
  * Image foreground = black
  * Palette: background, foreground
  * @author Christoph Stamm
@@ -19,6 +30,37 @@ public class Binarization implements IImageProcessor {
 	public static int s_background = 0; // white
 	public static int s_foreground = 1; // black
 
+	public static enum AdaptiveMethod {
+		MEAN_C(7),				// T = mean - k
+		NIBLACK(-0.2),			// T = mean + k*deviation
+		SAUVOLA(0.5),			// T = mean*(1 + k*(deviation/128 - 1))
+		BRADLEY_ROTH(0.15);		// T = mean*(1 - k)
+
+		public final double defaultK;
+
+		private AdaptiveMethod(double defaultK) {
+			this.defaultK = defaultK;
+		}
+	};
+
+	private static final double s_sauvolaRange = 128; // dynamic range of the standard deviation
+
+	private final boolean m_adaptive;
+
+	/**
+	 * Global binarization with Otsu's method
+	 */
+	public Binarization() {
+		this(false);
+	}
+
+	/**
+	 * @param adaptive true: adaptive binarization with local thresholds, false: global binarization with Otsu's method
+	 */
+	public Binarization(boolean adaptive) {
+		m_adaptive = adaptive;
+	}
+
 	@Override
 	public boolean isEnabled(int imageType) {
 		return imageType == Picsi.IMAGE_TYPE_GRAY;
@@ -26,12 +68,49 @@ public class Binarization implements IImageProcessor {
 
 	@Override
 	public ImageData run(ImageData inData, int imageType) {
-		final int threshold = otsuThreshold(inData);
+		final ImageStatistics statistics = inputStatistics(inData, imageType);
+
+		if (m_adaptive) {
+			Object[] methods = { "Mean-C", "Niblack", "Sauvola", "Bradley-Roth" };
+			int ch = OptionPane.showOptionDialog("Adaptive Binarization Method", SWT.ICON_INFORMATION, methods, 0);
+			if (ch < 0) return null;
+
+			Object[] windows = { "15x15", "31x31", "63x63", "127x127" };
+			int s = OptionPane.showOptionDialog("Window Size", SWT.ICON_INFORMATION, windows, 1);
+			if (s < 0) return null;
+
+			final AdaptiveMethod method = AdaptiveMethod.values()[ch];
+			return binarize(inData, statistics.integralImage(), method, (16 << s) - 1, method.defaultK, false, true);
+		}
+
+		Object[] methods = { "Otsu", "Multi-Level Otsu (3 classes)", "Multi-Level Otsu (4 classes)", "Multi-Level Otsu (5 classes)" };
+		int ch = OptionPane.showOptionDialog("Binarization Method", SWT.ICON_INFORMATION, methods, 0);
+		if (ch < 0) return null;
+
+		if (ch > 0) {
+			final int[] thresholds = otsuThresholds(statistics.histogram(), ch + 1);
+			return segment(inData, thresholds);
+		}
+
+		final int threshold = statistics.otsuThreshold();
 		System.out.println(threshold);
 
 		return binarize(inData, threshold, false, true);
 	}
 
+	/**
+	 * Statistics of the input document, if inData is its image, so that repeated runs share them
+	 * @param inData input image
+	 * @param imageType
+	 * @return statistics of the input document or new statistics of inData
+	 */
+	private static ImageStatistics inputStatistics(ImageData inData, int imageType) {
+		final TwinView views = (Picsi.s_shell != null) ? Picsi.getTwinView() : null;
+		final Document doc = (views != null) ? views.getDocument(true) : null;
+
+		return (doc != null && doc.getImage() == inData) ? doc.getStatistics() : new ImageStatistics(inData, imageType);
+	}
+
 	/**
 	 * Binarization of grayscale image
 	 * @param inData grayscale image
@@ -46,15 +125,238 @@ public class Binarization implements IImageProcessor {
 		ImageData outData = ImageProcessing.createImage(inData.width, inData.height, (binary) ? Picsi.IMAGE_TYPE_BINARY : Picsi.IMAGE_TYPE_GRAY);
 		final int fg = (smallValuesAreForeground) ? s_foreground : s_background;
 		final int bg = (smallValuesAreForeground) ? s_background : s_foreground;
+		final ByteImage in = ByteImage.wrap(inData);
 
-		Parallel.For(0, inData.height, v -> {
-			for (int u=0; u < inData.width; u++) {
-				outData.setPixel(u, v, (inData.getPixel(u,v) <= threshold) ? fg : bg);
+		if (binary) {
+			final BitImage out = BitImage.wrap(outData);
+			
+			Parallel.For(0, inData.height, v -> {
+				final byte[] line = new byte[inData.width];
+				int i = in.index(0, v);
+				
+				for (int u=0; u < inData.width; u++) {
+					line[u] = (byte)(((in.data[i++] & 0xFF) <= threshold) ? fg : bg);
+				}
+				out.setLine(v, line);
+			});
+		} else {
+			final ByteImage out = ByteImage.wrap(outData);
+			
+			Parallel.For(0, inData.height, v -> {
+				int i = in.index(0, v);
+				int o = out.index(0, v);
+				
+				for (int u=0; u < inData.width; u++) {
+					out.data[o++] = (byte)(((in.data[i++] & 0xFF) <= threshold) ? fg : bg);
+				}
+			});
+		}
+		return outData;
+	}
+
+	/**
+	 * Adaptive binarization of grayscale image with a local threshold T per pixel, computed from the mean and the standard deviation
+	 * of the pixel values in a window centered at the pixel. The window is clipped at the image border.
+	 * @param inData grayscale image
+	 * @param method threshold formula
+	 * @param windowSize side length of the window, odd
+	 * @param k parameter of the threshold formula, e.g. method.defaultK
+	 * @param smallValuesAreForeground true: Image foreground <= T, false: Image foreground > T
+	 * @param binary true: output is binary image, false: output is grayscale image
+	 * @return binarized image
+	 */
+	public static ImageData binarize(ImageData inData, AdaptiveMethod method, int windowSize, double k, boolean smallValuesAreForeground, boolean binary) {
+		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
+
+		return binarize(inData, new IntegralImage(ByteImage.wrap(inData)), method, windowSize, k, smallValuesAreForeground, binary);
+	}
+
+	/**
+	 * Adaptive binarization of grayscale image with precomputed integral images: the mean and the standard deviation
+	 * of a window cost O(1) for any window size. The image is processed in parallel bands of lines.
+	 * @param inData grayscale image
+	 * @param integral integral images of inData
+	 * @param method threshold formula
+	 * @param windowSize side length of the window, odd
+	 * @param k parameter of the threshold formula, e.g. method.defaultK
+	 * @param smallValuesAreForeground true: Image foreground <= T, false: Image foreground > T
+	 * @param binary true: output is binary image, false: output is grayscale image
+	 * @return binarized image
+	 */
+	public static ImageData binarize(ImageData inData, IntegralImage integral, AdaptiveMethod method, int windowSize, double k,
+			boolean smallValuesAreForeground, boolean binary) {
+		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
+		assert integral.width == inData.width && integral.height == inData.height : "different image sizes";
+
+		ImageData outData = ImageProcessing.createImage(inData.width, inData.height, (binary) ? Picsi.IMAGE_TYPE_BINARY : Picsi.IMAGE_TYPE_GRAY);
+		final int w = inData.width, h = inData.height;
+		final int r = windowSize/2;
+		final byte fg = (byte)((smallValuesAreForeground) ? s_foreground : s_background);
+		final byte bg = (byte)((smallValuesAreForeground) ? s_background : s_foreground);
+		final ByteImage in = ByteImage.wrap(inData);
+		final BitImage outBits = (binary) ? BitImage.wrap(outData) : null;
+		final ByteImage outBytes = (binary) ? null : ByteImage.wrap(outData);
+
+		Parallel.forStrips(h, (s, top, bottom) -> {
+			final byte[] line = new byte[w];
+
+			for (int v=top; v < bottom; v++) {
+				final int y0 = Math.max(0, v - r), y1 = Math.min(h, v + r + 1);
+				int i = in.index(0, v);
+
+				for (int u=0; u < w; u++) {
+					final int x0 = Math.max(0, u - r), x1 = Math.min(w, u + r + 1);
+					final double n = (x1 - x0)*(y1 - y0);
+					final double mean = integral.sum(x0, y0, x1, y1)/n;
+					double t;
+
+					switch(method) {
+					case MEAN_C: t = mean - k; break;
+					case BRADLEY_ROTH: t = mean*(1 - k); break;
+					default:
+						final double deviation = Math.sqrt(Math.max(0, integral.sumOfSquares(x0, y0, x1, y1)/n - mean*mean));
+						t = (method == AdaptiveMethod.NIBLACK) ? mean + k*deviation : mean*(1 + k*(deviation/s_sauvolaRange - 1));
+						break;
+					}
+					line[u] = ((in.data[i++] & 0xFF) <= t) ? fg : bg;
+				}
+
+				if (binary) outBits.setLine(v, line);
+				else System.arraycopy(line, 0, outBytes.data, outBytes.index(0, v), w);
 			}
 		});
 		return outData;
 	}
 
+	/**
+	 * Fused Otsu binarization of a grayscale or color image in two parallel passes without an intermediate grayscale image.
+	 * The first pass converts each line to luminance and accumulates per-thread histograms, the second pass converts each
+	 * line again and writes the packed binary image directly. Converting twice is cheaper than storing and reading
+	 * an intermediate image.
+	 * @param inData grayscale, RGB or indexed color image
+	 * @param smallValuesAreForeground true: foreground <= threshold, false: foreground > threshold
+	 * @param grayData output: grayscale image of the same size for the luminance, or null if it isn't needed
+	 * @return packed image: a set bit is a pixel that binarize would set to s_foreground
+	 */
+	public static PackedBinaryImage otsuBinarize(ImageData inData, boolean smallValuesAreForeground, ImageData grayData) {
+		final int w = inData.width, h = inData.height;
+		final LuminanceReader reader = luminanceReader(inData);
+		final ByteImage gray = (grayData != null) ? ByteImage.wrap(grayData) : null;
+		final int[] histogram = new int[256];
+
+		// first pass: luminance and histogram
+		Parallel.For(0, h,
+			// creator: histogram and line buffer of a chunk of lines
+			() -> new LineHistogram(w),
+			// loop body
+			(v, chunk) -> {
+				final byte[] line = chunk.line;
+
+				reader.read(v, line);
+				for (int u=0; u < w; u++) chunk.histogram[line[u] & 0xFF]++;
+				if (gray != null) System.arraycopy(line, 0, gray.data, gray.index(0, v), w);
+			},
+			// reducer
+			chunk -> {
+				for (int i=0; i < histogram.length; i++) histogram[i] += chunk.histogram[i];
+			}
+		);
+
+		// second pass: packed binary output
+		final int threshold = otsuThreshold(histogram);
+		final PackedBinaryImage out = new PackedBinaryImage(w, h);
+
+		Parallel.For(0, h,
+			// creator: line buffer of a chunk of lines
+			() -> new byte[w],
+			// loop body
+			(v, line) -> {
+				final int o = v*out.wordsPerLine;
+
+				reader.read(v, line);
+				for (int u0=0; u0 < w; u0 += 64) {
+					long word = 0;
+
+					for (int u=u0; u < Math.min(w, u0 + 64); u++) {
+						if (((line[u] & 0xFF) <= threshold) == smallValuesAreForeground) word |= Long.MIN_VALUE >>> (u - u0);
+					}
+					out.data[o + (u0 >>> 6)] = word;
+				}
+			}
+		);
+		return out;
+	}
+
+	/**
+	 * Histogram and line buffer of a chunk of lines
+	 */
+	private static class LineHistogram {
+		final int[] histogram = new int[256];
+		final byte[] line;
+
+		LineHistogram(int width) {
+			line = new byte[width];
+		}
+	}
+
+	/**
+	 * Reader of the luminance of image lines
+	 */
+	private interface LuminanceReader {
+		/**
+		 * Reads the luminance of line v into line
+		 */
+		void read(int v, byte[] line);
+	}
+
+	/**
+	 * @param inData grayscale, RGB or indexed color image
+	 * @return reader with the same luminance as GrayscaleImage.grayscale, grayscale images are read unchanged
+	 */
+	private static LuminanceReader luminanceReader(ImageData inData) {
+		final int w = inData.width;
+
+		if (ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY) {
+			final ByteImage in = ByteImage.wrap(inData);
+			return (v, line) -> System.arraycopy(in.data, in.index(0, v), line, 0, w);
+		}
+
+		final ByteImage r = ByteImage.wrapChannel(inData, 0);
+		final ByteImage g = ByteImage.wrapChannel(inData, 1);
+		final ByteImage b = ByteImage.wrapChannel(inData, 2);
+
+		if (r != null && g != null && b != null) {
+			// direct color image with one byte per channel
+			final int ps = r.pixelStride;
+
+			return (v, line) -> {
+				int ir = r.index(0, v), ig = g.index(0, v), ib = b.index(0, v);
+
+				for (int u=0; u < w; u++, ir += ps, ig += ps, ib += ps) {
+					line[u] = (byte)GrayscaleImage.luminance(r.data[ir] & 0xFF, g.data[ig] & 0xFF, b.data[ib] & 0xFF);
+				}
+			};
+		} else if (!inData.palette.isDirect && inData.depth == 8) {
+			// indexed color image: convert the palette once
+			final RGB[] rgbs = inData.getRGBs();
+			final byte[] lut = new byte[256];
+			for (int i=0; i < rgbs.length; i++) lut[i] = (byte)GrayscaleImage.luminance(rgbs[i].red, rgbs[i].green, rgbs[i].blue);
+			final ByteImage in = ByteImage.wrap(inData);
+
+			return (v, line) -> {
+				int i = in.index(0, v);
+				for (int u=0; u < w; u++) line[u] = lut[in.data[i++] & 0xFF];
+			};
+		} else {
+			return (v, line) -> {
+				for (int u=0; u < w; u++) {
+					RGB rgb = inData.palette.getRGB(inData.getPixel(u, v));
+					line[u] = (byte)GrayscaleImage.luminance(rgb.red, rgb.green, rgb.blue);
+				}
+			};
+		}
+	}
+
 	/**
 	 * Computes a global threshold for binarization using Otsu's method
 	 * @param inData grayscale image
@@ -63,43 +365,146 @@ public class Binarization implements IImageProcessor {
 	public static int otsuThreshold(ImageData inData) {
 		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
 
-		int classes = 1 << Math.min(8, inData.depth);
-		int[] histogram = ImageProcessing.histogram(inData, classes);
-		int total = inData.width * inData.height;
+		return otsuThreshold(ImageProcessing.histogram(inData, 1 << Math.min(8, inData.depth)));
+	}
+
+	/**
+	 * Otsu's method on prefix sums of the counts and the first moments: O(L) for L classes.
+	 * The between-class variance of the threshold t is (N*S0 - S*N0)^2/(N0*N1)/N^2, where N0, S0 are the count and the
+	 * first moment of the classes 0..t, N1 the count of the other classes, N and S the totals.
+	 * The sums are accumulated in long, hence they don't overflow for large images.
+	 * @param histogram histogram of L classes
+	 * @return threshold t: classes <= t belong to the first segment, the first t with maximal variance
+	 */
+	public static int otsuThreshold(int[] histogram) {
+		final int classes = histogram.length;
+		long total = 0, sum = 0;
+
+		for (int i=0; i < classes; i++) {
+			total += histogram[i];
+			sum += (long)i*histogram[i];
+		}
 
 		int threshold = 0;
 		double maxVariance = 0.0;
+		long count0 = 0, sum0 = 0;
 
-		for (int t = 0; t < classes; t++) {
-			// Calculate weights and means
-			int sumForeground = 0;
-			int countForeground = 0;
-			int sumBackground = 0;
-			int countBackground = 0;
-
-			for (int i = 0; i < 256; i++) {
-				if (i <= t) {
-					countForeground += histogram[i];
-					sumForeground += i * histogram[i];
-				} else {
-					countBackground += histogram[i];
-					sumBackground += i * histogram[i];
-				}
-			}
+		for (int t=0; t < classes; t++) {
+			count0 += histogram[t];
+			sum0 += (long)t*histogram[t];
 
-			double meanForeground = (countForeground == 0) ? 0 : (double) sumForeground / countForeground;
-			double meanBackground = (countBackground == 0) ? 0 : (double) sumBackground / countBackground;
+			final long count1 = total - count0;
+			if (count0 == 0 || count1 == 0) continue;
 
-			// Calculate between-class variance
-			double variance = countForeground * countBackground * Math.pow((meanForeground - meanBackground), 2) / Math.pow(total, 2);
+			final double d = (double)total*sum0 - (double)sum*count0;
+			final double variance = d*d/((double)count0*count1);
 
-			// Update threshold if variance is maximum
 			if (variance > maxVariance) {
 				maxVariance = variance;
 				threshold = t;
 			}
 		}
-
 		return threshold;
 	}
+
+	/**
+	 * Computes global thresholds for a segmentation into nThresholds + 1 classes using multi-level Otsu
+	 * @param inData grayscale image
+	 * @param nThresholds number of thresholds (1..4)
+	 * @return ascending thresholds
+	 */
+	public static int[] otsuThresholds(ImageData inData, int nThresholds) {
+		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
+
+		return otsuThresholds(ImageProcessing.histogram(inData, 1 << Math.min(8, inData.depth)), nThresholds);
+	}
+
+	/**
+	 * Multi-level Otsu: maximizes the between-class variance of K = nThresholds + 1 segments, which is equivalent to maximizing
+	 * the sum of S_k^2/N_k over the segments (count N_k, first moment S_k). With prefix sums each segment costs O(1),
+	 * and dynamic programming over the end of the last segment finds the optimum in O(K*L^2) instead of O(L^K).
+	 * Each segment contains at least one class.
+	 * @param histogram histogram of L classes
+	 * @param nThresholds number of thresholds, less than L
+	 * @return ascending thresholds t_1 < ... < t_K-1: segment k contains the classes t_k-1 + 1..t_k
+	 */
+	public static int[] otsuThresholds(int[] histogram, int nThresholds) {
+		final int classes = histogram.length;
+		assert 0 < nThresholds && nThresholds < classes : "wrong number of thresholds: " + nThresholds;
+
+		// prefix sums: classes 0..j-1
+		final long[] count = new long[classes + 1], moment = new long[classes + 1];
+		for (int i=0; i < classes; i++) {
+			count[i + 1] = count[i] + histogram[i];
+			moment[i + 1] = moment[i] + (long)i*histogram[i];
+		}
+
+		// best[k][j]: maximal sum of the first k + 1 segments covering the classes 0..j-1, from[k][j]: start of the last segment
+		final int segments = nThresholds + 1;
+		final double[][] best = new double[segments][classes + 1];
+		final int[][] from = new int[segments][classes + 1];
+
+		for (int j=1; j <= classes; j++) best[0][j] = segmentValue(count, moment, 0, j);
+		for (int k=1; k < segments; k++) {
+			for (int j=k + 1; j <= classes; j++) {
+				double max = -1;
+				for (int i=k; i < j; i++) {
+					final double value = best[k - 1][i] + segmentValue(count, moment, i, j);
+					if (value > max) {
+						max = value;
+						from[k][j] = i;
+					}
+				}
+				best[k][j] = max;
+			}
+		}
+
+		// backtracking
+		final int[] thresholds = new int[nThresholds];
+		for (int k=segments - 1, j=classes; k > 0; k--) {
+			j = from[k][j];
+			thresholds[k - 1] = j - 1;
+		}
+		return thresholds;
+	}
+
+	/**
+	 * @return S^2/N of the classes i..j-1, 0 if the classes are empty
+	 */
+	private static double segmentValue(long[] count, long[] moment, int i, int j) {
+		final long n = count[j] - count[i];
+		final double s = moment[j] - moment[i];
+		return (n == 0) ? 0 : s*s/n;
+	}
+
+	/**
+	 * Segmentation of a grayscale image into the classes of multiple thresholds
+	 * @param inData grayscale image
+	 * @param thresholds ascending thresholds
+	 * @return grayscale image: segment k gets the gray value k*255/(number of thresholds), i.e. black to white
+	 */
+	public static ImageData segment(ImageData inData, int[] thresholds) {
+		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
+
+		// lookup table: gray value of each pixel value
+		final byte[] lut = new byte[256];
+		for (int i=0, k=0; i < lut.length; i++) {
+			while (k < thresholds.length && i > thresholds[k]) k++;
+			lut[i] = (byte)(k*255/thresholds.length);
+		}
+
+		ImageData outData = ImageProcessing.createImage(inData.width, inData.height, Picsi.IMAGE_TYPE_GRAY);
+		final ByteImage in = ByteImage.wrap(inData);
+		final ByteImage out = ByteImage.wrap(outData);
+
+		Parallel.For(0, inData.height, v -> {
+			int i = in.index(0, v);
+			int o = out.index(0, v);
+
+			for (int u=0; u < inData.width; u++) {
+				out.data[o++] = lut[in.data[i++] & 0xFF];
+			}
+		});
+		return outData;
+	}
 }
@@ -1,6 +1,8 @@
 package imageprocessing;
 
 import gui.RectTracker;
+import gui.TwinView;
+import imageprocessing.particles.AnalyzedParticles;
 import main.Picsi;
 
 import org.eclipse.swt.graphics.ImageData;
@@ -20,14 +22,30 @@ public class Cropping implements IImageProcessor {
 
 	@Override
 	public ImageData run(ImageData inData, int imageType) {
-		final float zoom = Picsi.getTwinView().getZoomFactor(true);
+		final TwinView views = Picsi.getTwinView();
+		final float zoom = views.getZoomFactor(true);
 		final int w = inData.width, h = inData.height;
 		
 		// let the user choose the ROI using a tracker
 		RectTracker rt = new RectTracker();
 		Rectangle r = rt.start((int)(w*zoom/4), (int)(h*zoom/4));
+		if (r == null) return null;
+		printParticles(r, views.getDocument(true).getParticles());
 		
 		return ImageProcessing.crop(inData, r.x, r.y, r.width, r.height);
 	}
 
+	/**
+	 * Prints the analyzed particles inside the rectangle to the console, like the particle table of the analyzer
+	 * @param r rectangle in image coordinates
+	 * @param particles particles of the input image or null
+	 */
+	private static void printParticles(Rectangle r, AnalyzedParticles particles) {
+		if (particles == null) return;
+		
+		int[] selection = particles.select(r.x, r.y, r.x + r.width - 1, r.y + r.height - 1, null);
+		System.out.println(selection.length + " particles inside " + r);
+		for (int i : selection) System.out.println(particles.describe(i));
+	}
+
 }
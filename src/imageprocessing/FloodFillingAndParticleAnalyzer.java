@@ -1,20 +1,32 @@
 package imageprocessing;
 
-import imageprocessing.colors.GrayscaleImage;
+import imageprocessing.binary.ConnectedComponentLabeling;
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.buffer.LabelImage;
+import imageprocessing.buffer.PackedBinaryImage;
+import imageprocessing.particles.AnalyzedParticles;
+import imageprocessing.particles.ChainCode;
+import imageprocessing.particles.Features;
+import imageprocessing.particles.ParticleMeasurement;
+import imageprocessing.particles.ParticleReport;
+import imageprocessing.particles.ParticleTable;
+import imageprocessing.morphology.MorphologyPipeline;
+import imageprocessing.morphology.StructuringElement;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.ImageData;
 
 import main.Picsi;
 import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.FileDialog;
+import gui.OptionPane;
+import gui.TwinView;
+import utils.IntQueue;
 import utils.Parallel;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Queue;
-import java.util.Set;
-import java.util.Stack;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 public class FloodFillingAndParticleAnalyzer implements IImageProcessor {
 
@@ -28,28 +40,91 @@ public class FloodFillingAndParticleAnalyzer implements IImageProcessor {
 
 	@Override
 	public ImageData run(ImageData input, int imageType) {
+		Object[] reports = { "Console Table", "CSV File", "JSON Lines File", "None" };
+		int ch = OptionPane.showOptionDialog("Particle Report", SWT.ICON_INFORMATION, reports, 0);
+		if (ch < 0) return null;
+
+		ParticleReport report = null;
+		if (ch == 1 || ch == 2) {
+			FileDialog fileChooser = new FileDialog(Picsi.s_shell, SWT.SAVE);
+			fileChooser.setFilterExtensions(new String[] { (ch == 1) ? "*.csv" : "*.jsonl" });
+			String fileName = fileChooser.open();
+			if (fileName == null) return null;
+
+			try {
+				report = new ParticleReport(Paths.get(fileName), (ch == 1) ? ParticleReport.Format.CSV : ParticleReport.Format.JSON_LINES);
+			} catch (IOException e) {
+				OptionPane.showOptionDialog("Report file cannot be created: " + e.getMessage(), SWT.ICON_ERROR, new Object[] { "OK" }, 0);
+				return null;
+			}
+		}
 
 		ImageData output = transformToBinaryAndApplyMorphology(input, imageType);
 
-		List<ParticleData> particleData = floodFillAndAnalyzeParticles(output);
-		System.out.println("Anzahl Mnzen: " + particleData.size());
+		LabelImage labels = new LabelImage(output.width, output.height);
+		final int n = labelParticles(output, labels, false);
+		System.out.println("Anzahl Mnzen: " + n);
 
-		output = falseColor(output, particleData.size() + 2);
+		ParticleTable particles;
+		try (ParticleReport r = report) {
+			particles = ParticleMeasurement.measure(labels, 2, n, false, Features.ALL, r);
+		} catch (IOException e) {
+			OptionPane.showOptionDialog("Report file cannot be written: " + e.getMessage(), SWT.ICON_ERROR, new Object[] { "OK" }, 0);
+			return null;
+		}
+		output = falseColor(labels, n + 2);
 
-		for(ParticleData data : particleData) {
-			data.drawBoundingBox(output);
-			data.drawConvexHull(output);
-			data.drawCentreOfGravity(output);
+		for(int i = 0; i < particles.size; i++) {
+			drawBoundingBox(output, particles, i);
+			drawConvexHull(output, particles, i);
+			drawContours(output, particles, i);
+			drawCentreOfGravity(output, particles, i);
 		}
 
-		System.out.println("| Label | Area   | Center of Gravity (x,y) | Eccentricity | Perimeter | Circularity | Bounding Box (x1, y1), (x2, y2) | Convex Hull Area | Density  | Diameter | Convex Hull [(x1, y1), ...] ");
-		System.out.println("|-------|--------|-------------------------|--------------|-----------|-------------|---------------------------------|------------------|----------|----------|------------------------|");
+		if (ch == 0) {
+			System.out.println("| Label | Area   | Center of Gravity (x,y) | Eccentricity | Perimeter | Circularity | Bounding Box (x1, y1), (x2, y2) | Convex Hull Area | Density  | Diameter | Convex Hull [(x1, y1), ...] ");
+			System.out.println("|-------|--------|-------------------------|--------------|-----------|-------------|---------------------------------|------------------|----------|----------|------------------------|");
 
-		for (ParticleData p : particleData) {
-			p.printData();
+			for (int i = 0; i < particles.size; i++) {
+				printData(particles, i);
+			}
 		}
 
-		return output;
+		// the output is shown here, because the particles belong to the output document
+		showAnalysis(output, new AnalyzedParticles(labels, particles, 2));
+		return null;
+	}
+
+	/**
+	 * Shows the output image in the output view and attaches the analyzed particles to the output document,
+	 * e.g. for hovering and selecting particles
+	 * @param output output image
+	 * @param particles particles of the output image
+	 */
+	private static void showAnalysis(ImageData output, AnalyzedParticles particles) {
+		final TwinView views = Picsi.getTwinView();
+
+		views.showImageInSecondView(output);
+		views.getDocument(false).setParticles(particles);
+	}
+
+	/**
+	 * Analyzes the particles of an image without GUI and streams the report into a file
+	 * @param input image
+	 * @param imageType
+	 * @param reportFile CSV file or JSON Lines file (.jsonl, .json)
+	 * @return number of particles
+	 * @throws IOException
+	 */
+	public static int analyzeToReport(ImageData input, int imageType, Path reportFile) throws IOException {
+		ImageData binary = transformToBinaryAndApplyMorphology(input, imageType);
+		LabelImage labels = new LabelImage(binary.width, binary.height);
+		final int n = labelParticles(binary, labels, false);
+
+		try (ParticleReport report = new ParticleReport(reportFile, ParticleReport.Format.of(reportFile.toString()))) {
+			ParticleMeasurement.measure(labels, 2, n, false, Features.ALL, report);
+		}
+		return n;
 	}
 
 	/**
@@ -59,172 +134,163 @@ public class FloodFillingAndParticleAnalyzer implements IImageProcessor {
 	 * @return binary image
 	 */
 	private static ImageData transformToBinaryAndApplyMorphology(ImageData input, int imageType) {
-		ImageData output = input;
-
-		if(imageType != Picsi.IMAGE_TYPE_GRAY && imageType != Picsi.IMAGE_TYPE_BINARY) {
-			output = GrayscaleImage.grayscale(input);
+		if(imageType == Picsi.IMAGE_TYPE_BINARY) {
+			return MorphologicFilter.closing(input, MorphologicFilter.s_diamond5, 2, 2, 1);
 		}
 
-		if(imageType != Picsi.IMAGE_TYPE_BINARY) {
-			final int threshold = Binarization.otsuThreshold(input);
-			output = Binarization.binarize(output, threshold, false, false);
-		}
+		// fused grayscale conversion, thresholding and binarization, the closing runs on the packed image
+		final PackedBinaryImage binary = Binarization.otsuBinarize(input, false, null);
+		final PackedBinaryImage closed = MorphologyPipeline.closing(StructuringElement.of(MorphologicFilter.s_diamond5, 2, 2), 1).run(binary);
+		final ImageData output = ImageProcessing.createImage(input.width, input.height, Picsi.IMAGE_TYPE_GRAY);
 
-		return MorphologicFilter.closing(output, MorphologicFilter.s_diamond5, 2, 2, 1);
+		return closed.toGrayImageData(output.palette, MorphologicFilter.s_foreground, MorphologicFilter.s_background);
 	}
 
 	/**
-	 * Labels a binarized grayscale image and analyzes the particles
-	 * @param imageData input: grayscale image with intensities 0 and 1 only, output: labeled foreground regions
-	 * @return List of particle data
+	 * Labels a binarized grayscale image with flood filling (4-connectivity).
+	 * The particles are measured separately, e.g. with ParticleMeasurement.measure(labels, 2, n, false, features).
+	 * @param imageData grayscale image with intensities 0 and 1 only
+	 * @param labels output: labeled foreground regions starting at label 2, 0 = background
+	 * @return number of particles n
 	 */
-	public static List<ParticleData> floodFillAndAnalyzeParticles(ImageData imageData) {
+	public static int floodFill(ImageData imageData, LabelImage labels) {
 		assert ImageProcessing.determineImageType(imageData) == Picsi.IMAGE_TYPE_GRAY;
+		assert imageData.width == labels.width && imageData.height == labels.height;
 
-		Set<Coordinate> visited = new HashSet<>();
-		List<ParticleData> particleData = new ArrayList<>();
+		final ByteImage image = ByteImage.wrap(imageData);
+		final FloodFill floodFill = new FloodFill(image, labels);
 		int label = 1;
 
-		for(int v = 0; v < imageData.height; v ++) {
-			for(int u = 0; u < imageData.width; u ++) {
-				if(imageData.getPixel(u, v) == 1) {
-					particleData.add(floodFillAndAnalyzeParticles(imageData, visited, u, v, ++label));
+		Arrays.fill(labels.data, 0, labels.width*labels.height, 0);
+		for(int v = 0; v < image.height; v ++) {
+			for(int u = 0; u < image.width; u ++) {
+				if(image.get(u, v) == s_foreground && labels.get(u, v) == 0) {
+					floodFill.fill(u, v, ++label);
 				}
 			}
 		}
 
-		return particleData;
+		return label - 1;
 	}
 
 	/**
-	 * Finds all connected pixels, marks them with a label and analyzes the region
-	 * @param imageData binarized grayscale image
-	 * @param visited already visited pixels
-	 * @param startX start x coordinate
-	 * @param startY start y coordinate
-	 * @param label value to set to the pixels of the found region
-	 * @return Particle data
+	 * Labels a binarized grayscale image in parallel without analyzing the particles.
+	 * With 4-connectivity the labels are identical to the labels of floodFill
+	 * (raster order of the first pixel, starting at 2).
+	 * @param imageData grayscale image with intensities 0 and 1 only
+	 * @param labels output: labeled foreground regions starting at label 2, 0 = background
+	 * @param eightConnected true: 8-neighborhood, false: 4-neighborhood
+	 * @return number of particles
 	 */
-	public static ParticleData floodFillAndAnalyzeParticles(ImageData imageData, Set<Coordinate> visited, int startX, int startY, int label) {
-
-		ParticleData particleData = new ParticleData(label);
-		Queue<Coordinate> queue = new ArrayDeque<>();
-		queue.add(new Coordinate(startX, startY));
-
-		List<Coordinate> coordinates = new ArrayList<>();
-		Set<Coordinate> perimeter = new HashSet<>();
-		Coordinate mostRightPixel = new Coordinate(startX, startY);
-		Coordinate mostLeftPixel = new Coordinate(startX, startY);
-		Coordinate mostTopPixel = new Coordinate(startX, startY);
-		Coordinate mostBottomPixel = new Coordinate(startX, startY);
-
-		int numberOfPixels = 0;
-		int sumXCoordinates = 0;
-		int sumYCoordinates = 0;
-
-		while(!queue.isEmpty()) {
-			numberOfPixels ++;
-			Coordinate coordinate = queue.poll();
-			imageData.setPixel((int) coordinate.x(), (int) coordinate.y(), label);
-			sumXCoordinates += coordinate.x();
-			sumYCoordinates += coordinate.y();
-			coordinates.add(coordinate);
-
-			if(coordinate.isLeftOf(mostLeftPixel)) {
-				mostLeftPixel = coordinate;
-			} else if(coordinate.isRightOf(mostRightPixel)) {
-				mostRightPixel = coordinate;
-			}
-			if(coordinate.isAbove(mostTopPixel)) {
-				mostTopPixel = coordinate;
-			} else if(coordinate.isBelowOf(mostBottomPixel)) {
-				mostBottomPixel = coordinate;
-			}
-
-			Coordinate leftCoordinate   = new Coordinate(coordinate.x() - 1, coordinate.y());
-			Coordinate rightCoordinate  = new Coordinate(coordinate.x() + 1, coordinate.y());
-			Coordinate topCoordinate    = new Coordinate(coordinate.x(), coordinate.y() - 1);
-			Coordinate bottomCoordinate = new Coordinate(coordinate.x(), coordinate.y() + 1);
+	public static int labelParticles(ImageData imageData, LabelImage labels, boolean eightConnected) {
+		assert ImageProcessing.determineImageType(imageData) == Picsi.IMAGE_TYPE_GRAY;
 
-			boolean isLeftBoundary   = !visited.contains(leftCoordinate)   && processPixel(imageData, queue, leftCoordinate);
-			boolean isRightBoundary  = !visited.contains(rightCoordinate)  && processPixel(imageData, queue, rightCoordinate);
-			boolean isTopBoundary    = !visited.contains(topCoordinate)    && processPixel(imageData, queue, topCoordinate);
-			boolean isBottomBoundary = !visited.contains(bottomCoordinate) && processPixel(imageData, queue, bottomCoordinate);
+		final int n = ConnectedComponentLabeling.label(PackedBinaryImage.from(imageData, s_foreground), labels, eightConnected);
 
-			if (isLeftBoundary || isRightBoundary || isTopBoundary || isBottomBoundary) {
-				perimeter.add(coordinate);
+		Parallel.For(0, labels.height, v -> {
+			for (int i = v*labels.width; i < (v + 1)*labels.width; i++) {
+				if (labels.data[i] > 0) labels.data[i]++;
 			}
-
-			visited.add(leftCoordinate);
-			visited.add(rightCoordinate);
-			visited.add(topCoordinate);
-			visited.add(bottomCoordinate);
-		}
-
-		particleData.calculateArea(numberOfPixels);
-		particleData.calculateBoundingBox(mostLeftPixel, mostRightPixel, mostTopPixel, mostBottomPixel);
-		particleData.calculateCenterOfGravity(sumXCoordinates, sumYCoordinates, numberOfPixels);
-		particleData.calculateEccentricity(sumXCoordinates, sumYCoordinates, numberOfPixels, coordinates);
-		particleData.calculatePerimeterAndCircularity(perimeter);
-		particleData.calculateConvexHull(coordinates);
-
-		return particleData;
+		});
+		return n;
 	}
 
 	/**
-	 * Determines if a pixel belongs to a region and if the pixel is a boundary pixel
-	 * Definition boundary pixel: A pixel is a boundary pixel if it does not belong to the region
-	 * @param imageData binarized grayscale image
-	 * @param queue queue where the pixel is added if it belongs to the region
-	 * @param coordinate pixel-coordinate
-	 * @return true if the pixel is a boundary pixel, false otherwise
+	 * Flood filling without per pixel objects: visited pixels are stored in a bitmap covering the image and a
+	 * one pixel wide border, and the queue contains pixel indices (v*width + u).
+	 * All buffers are reused for all particles of an image.
 	 */
-	private static boolean processPixel(ImageData imageData, Queue<Coordinate> queue, Coordinate coordinate) {
-		if (isMatch(coordinate, imageData)) {
-			queue.add(coordinate);
-			return false;
-		} else {
-			return true;
+	private static class FloodFill {
+		private final ByteImage image;
+		private final LabelImage labels;
+		private final int width, height;
+		private final long[] visited;	// bit (v + 1)*(width + 2) + u + 1 is set if pixel (u,v) has been visited
+		private final IntQueue queue;
+
+		public FloodFill(ByteImage image, LabelImage labels) {
+			this.image = image;
+			this.labels = labels;
+			this.width = image.width;
+			this.height = image.height;
+			this.visited = new long[((width + 2)*(height + 2) + 63) >>> 6];
+			this.queue = new IntQueue(width + height);
 		}
-	}
 
-	/**
-	 * Checks if a given coordinate is in the range of the given image and is a foreground pixel
-	 *
-	 * @param coordinate the coordinate to check
-	 * @param imageData the image data to check against
-	 * @return {@code true} if the coordinate is within the bounds of the image and the pixel value at the coordinate is 1; {@code false} otherwise
-	 */
-	public static boolean isMatch(Coordinate coordinate, ImageData imageData) {
-		if(coordinate.x() < 0 || coordinate.x() >= imageData.width ||
-				coordinate.y() < 0 || coordinate.y() >= imageData.height) {
-			return false;
+		/**
+		 * Finds all connected pixels and marks them with a label
+		 * @param startX start x coordinate
+		 * @param startY start y coordinate
+		 * @param label value to set to the pixels of the found region
+		 */
+		public void fill(int startX, int startY, int label) {
+			queue.clear();
+			queue.add(startY*width + startX);
+
+			while(!queue.isEmpty()) {
+				final int p = queue.poll();
+				final int x = p % width, y = p / width;
+
+				labels.data[p] = label;
+				processPixel(x - 1, y);
+				processPixel(x + 1, y);
+				processPixel(x, y - 1);
+				processPixel(x, y + 1);
+			}
+		}
+
+		/**
+		 * Marks a pixel as visited, if it hasn't been visited before, and enqueues it if it belongs to the region.
+		 * @param x pixel-coordinate, can be outside of the image
+		 * @param y pixel-coordinate, can be outside of the image
+		 */
+		private void processPixel(int x, int y) {
+			final int bit = (y + 1)*(width + 2) + x + 1;
+			final long mask = 1L << bit;
+
+			if ((visited[bit >>> 6] & mask) != 0) return;
+			visited[bit >>> 6] |= mask;
+
+			if (x >= 0 && x < width && y >= 0 && y < height && image.get(x, y) == s_foreground && labels.data[y*width + x] == 0) {
+				queue.add(y*width + x);
+			}
 		}
-		return imageData.getPixel((int) coordinate.x(), (int) coordinate.y()) == s_foreground;
 	}
 
 	/**
 	 * False color presentation of labeled grayscale image
 	 * @param inData labeled grayscale image
-	 * @param n number of different false colors (<= 256)
+	 * @param n number of different false colors
 	 * @return indexed color image
 	 */
 	public static ImageData falseColor(ImageData inData, int n) {
 		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
-		assert 0 < n && n <= 256;
 
-		var targetImage = ImageProcessing.createImage(inData.width, inData.height, Picsi.IMAGE_TYPE_RGB);
+		return falseColor(LabelImage.from(inData), n);
+	}
+
+	/**
+	 * False color presentation of a label map
+	 * @param labels label map, 0 = background
+	 * @param n number of different false colors
+	 * @return RGB image
+	 */
+	public static ImageData falseColor(LabelImage labels, int n) {
+		assert 0 < n;
+
+		var targetImage = ImageProcessing.createImage(labels.width, labels.height, Picsi.IMAGE_TYPE_RGB);
 
 		RGB[] colors = generateDistinctColors(n);
+		int[] pixels = new int[n];
+		for (int i = 0; i < n; i++) pixels[i] = targetImage.palette.getPixel(colors[i]);
 
-		Parallel.For(0, inData.height, v -> {
-			for (int u=0; u < inData.width; u++) {
-				int group = inData.getPixel(u, v);
+		Parallel.For(0, labels.height, v -> {
+			for (int u=0; u < labels.width; u++) {
+				int group = labels.get(u, v);
 
 				if(group == 0) {
 					targetImage.setPixel(u, v, s_background);
 				} else {
-					targetImage.setPixel(u, v, targetImage.palette.getPixel(colors[group % n]));
+					targetImage.setPixel(u, v, pixels[group % n]);
 				}
 			}
 		});
@@ -264,440 +330,135 @@ public class FloodFillingAndParticleAnalyzer implements IImageProcessor {
 		return new RGB(r, g, b);
 	}
 
-	private static class ParticleData {
-
-		private final int label;
-		private int area;
-		private Coordinate centreOfGravity;
-		private double eccentricity;
-		private int perimeter;
-		private double circularity;
-		private BoundingBox boundingBox;
-		private List<Coordinate> convexHull;
-		private double convexHullArea;
-		private double density;
-		private double diameter;
-
-		public ParticleData(int label) {
-			this.label = label;
-		}
-
-		/**
-		 * Sets the area of the particle.
-		 *
-		 * @param numberOfPixels the number of pixels in the particle
-		 */
-		public void calculateArea(int numberOfPixels) {
-			this.area = numberOfPixels;
-		}
-
-		/**
-		 * Calculates and sets the bounding box of the particle.
-		 *
-		 * @param leftPixel   the leftmost pixel of the particle
-		 * @param rightPixel  the rightmost pixel of the particle
-		 * @param topPixel    the topmost pixel of the particle
-		 * @param bottomPixel the bottommost pixel of the particle
-		 */
-		public void calculateBoundingBox(Coordinate leftPixel, Coordinate rightPixel, Coordinate topPixel, Coordinate bottomPixel) {
-			this.boundingBox = new BoundingBox(new Coordinate(leftPixel.x, topPixel.y), new Coordinate(rightPixel.x, bottomPixel.y));
-		}
-
-		/**
-		 * Calculates and sets the center of gravity of the particle.
-		 *
-		 * @param sumXCoordinates the sum of x coordinates of all pixels in the particle
-		 * @param sumYCoordinates the sum of y coordinates of all pixels in the particle
-		 * @param numberOfPixels  the number of pixels in the particle
-		 */
-		public void calculateCenterOfGravity(int sumXCoordinates, int sumYCoordinates, int numberOfPixels) {
-			this.centreOfGravity = new Coordinate((double) sumXCoordinates / numberOfPixels, (double) sumYCoordinates / numberOfPixels);
-		}
-
-		/**
-		 * Calculates and sets the eccentricity of the particle.
-		 *
-		 * @param sumXCoordinates the sum of x coordinates of all pixels in the particle
-		 * @param sumYCoordinates the sum of y coordinates of all pixels in the particle
-		 * @param numberOfPixels  the number of pixels in the particle
-		 * @param coordinates     the list of coordinates of all pixels in the particle
-		 */
-		public void calculateEccentricity(int sumXCoordinates, int sumYCoordinates, int numberOfPixels, List<Coordinate> coordinates) {
-
-			if(numberOfPixels == 1) {
-				this.eccentricity = 1;
-			} else {
-				double meanX = (double) sumXCoordinates / numberOfPixels;
-				double meanY = (double) sumYCoordinates / numberOfPixels;
-				double sxx = 0, syy = 0, sxy = 0;
-
-				for (Coordinate c : coordinates) {
-					double dx = c.x() - meanX;
-					double dy = c.y() - meanY;
-					sxx += dx * dx;
-					syy += dy * dy;
-					sxy += dx * dy;
-				}
-
-				sxx /= numberOfPixels;
-				syy /= numberOfPixels;
-				sxy /= numberOfPixels;
-
-				double trace = sxx + syy;
-				double det = sxx * syy - sxy * sxy;
-				double sqrt = Math.sqrt(trace * trace - 4 * det);
-				double eigenvalue1 = (trace + sqrt) / 2;
-				double eigenvalue2 = (trace - sqrt) / 2;
-
-				double majorAxis = Math.sqrt(Math.max(eigenvalue1, eigenvalue2));
-				double minorAxis = Math.sqrt(Math.min(eigenvalue1, eigenvalue2));
-				this.eccentricity = Math.sqrt(1 - (minorAxis * minorAxis) / (majorAxis * majorAxis));
-			}
-		}
-
-		/**
-		 * Calculates and sets the perimeter and circularity of the particle.
-		 *
-		 * @param boundaryPixels the set of boundary pixels of the particle
-		 */
-		public void calculatePerimeterAndCircularity(Set<Coordinate> boundaryPixels) {
-			this.perimeter = boundaryPixels.size();
-
-			if(boundaryPixels.size() == 1) {
-				this.circularity = 1;
-			} else {
-				this.circularity = (4 * Math.PI * area) / (Math.pow(perimeter, 2));
-			}
-		}
-
-		/**
-		 * Calculates and sets the convex hull of the particle using a graham scan.
-		 *
-		 * @param coordinates the list of coordinates of all pixels in the particle
-		 */
-		public void calculateConvexHull(List<Coordinate> coordinates) {
-			this.convexHull = grahamScan(coordinates);
-			calculateConvexHullArea();
-			calculateConvexHullDiameter();
-			this.density = area / convexHullArea;
-		}
-
-		/**
-		 * Performs the Graham scan algorithm to find the convex hull of a set of points.
-		 *
-		 * @param coordinates the list of coordinates of all pixels in the particle
-		 * @return the list of points forming the convex hull
-		 */
-		private List<Coordinate> grahamScan(List<Coordinate> coordinates) {
-			if (coordinates.size() <= 1) return coordinates;
-
-			// Step 1: Find the point with the lowest y-coordinate (and the leftmost point if tie)
-			Coordinate start = coordinates.stream().min(Comparator.comparing(Coordinate::y).thenComparing(Coordinate::x)).get();
-			coordinates.remove(start);
-
-			// Step 2: Sort the points by polar angle with respect to the start point
-			coordinates.sort((a, b) -> {
-				double angle1 = Math.atan2(a.y() - start.y(), a.x() - start.x());
-				double angle2 = Math.atan2(b.y() - start.y(), b.x() - start.x());
-				if (angle1 < angle2) return -1;
-				if (angle1 > angle2) return 1;
-				double distance1 = Math.sqrt(Math.pow(a.x() - start.x(), 2) + Math.pow(a.y() - start.y(), 2));
-				double distance2 = Math.sqrt(Math.pow(b.x() - start.x(), 2) + Math.pow(b.y() - start.y(), 2));
-				return Double.compare(distance1, distance2);
-			});
-
-			// Step 3: Initialize the hull with the start point and the first point
-			Stack<Coordinate> hull = new Stack<>();
-			hull.push(start);
-			hull.push(coordinates.get(0));
-
-			// Step 4: Process the remaining points
-			for (int i = 1; i < coordinates.size(); i++) {
-				Coordinate top = hull.pop();
-				while (!hull.isEmpty() && ccw(hull.peek(), top, coordinates.get(i)) <= 0) {
-					top = hull.pop();
-				}
-				hull.push(top);
-				hull.push(coordinates.get(i));
-			}
-
-			return new ArrayList<>(hull);
-		}
-
-		/**
-		 * Computes the counter-clockwise value for three points.
-		 *
-		 * @param a the first point
-		 * @param b the second point
-		 * @param c the third point
-		 * @return a positive value if counter-clockwise, negative if clockwise, zero if collinear
-		 */
-		private int ccw(Coordinate a, Coordinate b, Coordinate c) {
-			return Double.compare((b.x() - a.x()) * (c.y() - a.y()), (b.y() - a.y()) * (c.x() - a.x()));
-		}
-
-		/**
-		 * Calculates and sets the area of the convex hull.
-		 */
-		private void calculateConvexHullArea() {
-			if (convexHull.size() < 3) {
-				this.convexHullArea = 1;
-			} else {
-				double area = 0.0;
-				int n = convexHull.size();
-
-				for (int i = 0; i < n; i++) {
-					Coordinate current = convexHull.get(i);
-					Coordinate next = convexHull.get((i + 1) % n);
-					area += current.x() * next.y() - next.x() * current.y();
-				}
-
-				this.convexHullArea = Math.abs(area) / 2.0;
-			}
-		}
-
-		/**
-		 * Calculates and sets the diameter of the convex hull.
-		 */
-		private void calculateConvexHullDiameter() {
-			int n = convexHull.size();
-			if (n < 2) {
-				this.diameter = 0;
-			} else {
-				int k = 1;
-				double maxDistance = 0.0;
-
-				for (int i = 0; i < n; i++) {
-					while (true) {
-						double currentDistance = squaredDistance(convexHull.get(i), convexHull.get((k + 1) % n));
-						double nextDistance = squaredDistance(convexHull.get(i), convexHull.get(k));
-
-						if (currentDistance > nextDistance) {
-							k = (k + 1) % n;
-						} else {
-							break;
-						}
-					}
-
-					double distance = squaredDistance(convexHull.get(i), convexHull.get(k));
-					if (distance > maxDistance) {
-						maxDistance = distance;
-					}
-				}
-
-				this.diameter = Math.sqrt(maxDistance);
-			}
-		}
-
-		/**
-		 * Computes the squared distance between two coordinates.
-		 *
-		 * @param a the first coordinate
-		 * @param b the second coordinate
-		 * @return the squared distance between the coordinates
-		 */
-		public double squaredDistance(Coordinate a, Coordinate b) {
-			double dx = a.x() - b.x();
-			double dy = a.y() - b.y();
-			return dx * dx + dy * dy;
-		}
-
-		/**
-		 * Draws the bounding box on the given image.
-		 *
-		 * @param image the image on which to draw the bounding box
-		 */
-		public void drawBoundingBox(ImageData image) {
-			Coordinate topRight = new Coordinate(boundingBox.b.x, boundingBox.a.y);
-			Coordinate topLeft = boundingBox.a;
-			Coordinate bottomLeft = new Coordinate(boundingBox.a.x, boundingBox.b.y);
-			Coordinate bottomRight = boundingBox.b;
-
-			drawLine(image, topLeft, topRight, 0xFF0000);
-			drawLine(image, bottomLeft, bottomRight, 0xFF0000);
-			drawLine(image, topLeft, bottomLeft, 0xFF0000);
-			drawLine(image, topRight, bottomRight, 0xFF0000);
-		}
+	/**
+	 * Draws the bounding box of a particle on the given image.
+	 *
+	 * @param image the image on which to draw the bounding box
+	 * @param particles measured particles
+	 * @param i particle index
+	 */
+	private static void drawBoundingBox(ImageData image, ParticleTable particles, int i) {
+		final int left = (int) particles.column("left")[i], top = (int) particles.column("top")[i];
+		final int right = (int) particles.column("right")[i], bottom = (int) particles.column("bottom")[i];
+
+		drawLine(image, left, top, right, top, 0xFF0000);
+		drawLine(image, left, bottom, right, bottom, 0xFF0000);
+		drawLine(image, left, top, left, bottom, 0xFF0000);
+		drawLine(image, right, top, right, bottom, 0xFF0000);
+	}
 
-		/**
-		 * Draws the convex hull on the given image.
-		 *
-		 * @param image the image on which to draw the convex hull
-		 */
-		public void drawConvexHull(ImageData image) {
-			for (int i = 0; i < convexHull.size(); i++) {
-				Coordinate start = convexHull.get(i);
-				Coordinate end = convexHull.get((i + 1) % convexHull.size());
-				drawLine(image, start, end, 0x00FF00);
-			}
-		}
+	/**
+	 * Draws the convex hull of a particle on the given image.
+	 *
+	 * @param image the image on which to draw the convex hull
+	 * @param particles measured particles
+	 * @param i particle index
+	 */
+	private static void drawConvexHull(ImageData image, ParticleTable particles, int i) {
+		final int[] xs = particles.hull(i)[0], ys = particles.hull(i)[1];
 
-		/**
-		 * Draws the center of gravity on the given image.
-		 *
-		 * @param image the image on which to draw the center of gravity
-		 */
-		public void drawCentreOfGravity(ImageData image) {
-			for(int x = (int) (centreOfGravity.x - 1); x <= centreOfGravity.x + 1; x ++) {
-				for(int y = (int) (centreOfGravity.y - 1); y <= centreOfGravity.y + 1; y ++) {
-					image.setPixel(x, y, 0xFFFFFF);
-				}
-			}
+		for (int j = 0; j < xs.length; j++) {
+			final int k = (j + 1) % xs.length;
+			drawLine(image, xs[j], ys[j], xs[k], ys[k], 0x00FF00);
 		}
+	}
 
-		/**
-		 * Draws a line on the given image.
-		 *
-		 * @param image the image on which to draw the line
-		 * @param start the starting coordinate of the line
-		 * @param end   the ending coordinate of the line
-		 * @param color the color of the line
-		 */
-		private void drawLine(ImageData image, Coordinate start, Coordinate end, int color) {
-			int dx = (int) Math.abs(end.x - start.x);
-			int dy = (int) Math.abs(end.y - start.y);
-			int sx = start.x < end.x ? 1 : -1;
-			int sy = start.y < end.y ? 1 : -1;
-			int err = dx - dy;
-			int x = (int) start.x;
-			int y = (int) start.y;
-
-			while (true) {
-				image.setPixel(x, y, color);
-
-				if (x == end.x && y == end.y) break;
-
-				int e2 = 2 * err;
-				if (e2 > -dy) {
-					err -= dy;
-					x += sx;
-				}
-				if (e2 < dx) {
-					err += dx;
-					y += sy;
-				}
-			}
+	/**
+	 * Draws the outer and inner contours of a particle on the given image.
+	 *
+	 * @param image the image on which to draw the contours
+	 * @param particles measured particles
+	 * @param i particle index
+	 */
+	private static void drawContours(ImageData image, ParticleTable particles, int i) {
+		for (ChainCode contour : particles.contours(i)) {
+			contour.draw(image, 0x0000FF);
 		}
+	}
 
-		/**
-		 * Prints the data of the particle in a formatted table row.
-		 */
-		public void printData() {
-			StringBuilder convexHullString = new StringBuilder();
-			for (Coordinate coord : convexHull) {
-				convexHullString.append(String.format("(%.2f, %.2f), ", coord.x(), coord.y()));
-			}
+	/**
+	 * Draws the center of gravity of a particle on the given image.
+	 *
+	 * @param image the image on which to draw the center of gravity
+	 * @param particles measured particles
+	 * @param i particle index
+	 */
+	private static void drawCentreOfGravity(ImageData image, ParticleTable particles, int i) {
+		final double cx = particles.column("centroidX")[i], cy = particles.column("centroidY")[i];
 
-			if (convexHullString.length() > 0) {
-				convexHullString.setLength(convexHullString.length() - 2);
+		for(int x = (int) (cx - 1); x <= cx + 1; x ++) {
+			for(int y = (int) (cy - 1); y <= cy + 1; y ++) {
+				image.setPixel(x, y, 0xFFFFFF);
 			}
-
-			System.out.printf(
-				"| %-5d | %6d |        (%6.2f, %6.2f) | %.4f       | %-9d | %.4f      | (%3.0f, %3.0f), (%3.0f, %3.0f)          | %-16.2f | %.4f   | %6.2f   | [%s]  |%n",
-				label,
-				area,
-				centreOfGravity.x(), centreOfGravity.y(),
-				eccentricity,
-				perimeter,
-				circularity,
-				boundingBox.a.x(), boundingBox.a.y(), boundingBox.b.x(), boundingBox.b.y(),
-				convexHullArea,
-				density,
-				diameter,
-				convexHullString
-			);
 		}
 	}
 
 	/**
-	 * Represents a coordinate with x and y values.
+	 * Draws a line on the given image (Bresenham).
 	 *
-	 * @param x the x-coordinate
-	 * @param y the y-coordinate
+	 * @param image the image on which to draw the line
+	 * @param x0 x-coordinate of the start point
+	 * @param y0 y-coordinate of the start point
+	 * @param x1 x-coordinate of the end point
+	 * @param y1 y-coordinate of the end point
+	 * @param color the color of the line
 	 */
-	private record Coordinate(double x, double y) {
-
-		/**
-		 * Checks if this coordinate is to the right of the specified coordinate.
-		 *
-		 * @param other the other coordinate
-		 * @return {@code true} if this coordinate is to the right of the other coordinate; {@code false} otherwise
-		 */
-		public boolean isRightOf(Coordinate other) {
-			return this.x > other.x;
-		}
-
-		/**
-		 * Checks if this coordinate is to the left of the specified coordinate.
-		 *
-		 * @param other the other coordinate
-		 * @return {@code true} if this coordinate is to the left of the other coordinate; {@code false} otherwise
-		 */
-		public boolean isLeftOf(Coordinate other) {
-			return this.x < other.x;
-		}
-
-		/**
-		 * Checks if this coordinate is below the specified coordinate.
-		 *
-		 * @param other the other coordinate
-		 * @return {@code true} if this coordinate is below the other coordinate; {@code false} otherwise
-		 */
-		public boolean isBelowOf(Coordinate other) {
-			return this.y > other.y;
-		}
-
-		/**
-		 * Checks if this coordinate is above the specified coordinate.
-		 *
-		 * @param other the other coordinate
-		 * @return {@code true} if this coordinate is above the other coordinate; {@code false} otherwise
-		 */
-		public boolean isAbove(Coordinate other) {
-			return this.y < other.y;
-		}
-
-		/**
-		 * Indicates whether some other object is "equal to" this one.
-		 * Two coordinates are equal if they have the same x and y values.
-		 *
-		 * @param obj the reference object with which to compare
-		 * @return {@code true} if this object is the same as the obj argument; {@code false} otherwise
-		 */
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj) {
-				return true;
+	private static void drawLine(ImageData image, int x0, int y0, int x1, int y1, int color) {
+		int dx = Math.abs(x1 - x0);
+		int dy = Math.abs(y1 - y0);
+		int sx = x0 < x1 ? 1 : -1;
+		int sy = y0 < y1 ? 1 : -1;
+		int err = dx - dy;
+		int x = x0;
+		int y = y0;
+
+		while (true) {
+			image.setPixel(x, y, color);
+
+			if (x == x1 && y == y1) break;
+
+			int e2 = 2 * err;
+			if (e2 > -dy) {
+				err -= dy;
+				x += sx;
 			}
-			if (obj == null || getClass() != obj.getClass()) {
-				return false;
-			}
-
-			Coordinate that = (Coordinate) obj;
-
-			if (x != that.x) {
-				return false;
+			if (e2 < dx) {
+				err += dx;
+				y += sy;
 			}
-			return y == that.y;
-		}
-
-		@Override
-		public String toString() {
-			return String.format("(%.2f, %.2f)", x, y);
 		}
 	}
 
 	/**
-	 * Represents a bounding box defined by two coordinates.
+	 * Prints the data of a particle in a formatted table row.
 	 *
-	 * @param a the first coordinate
-	 * @param b the second coordinate
+	 * @param particles measured particles
+	 * @param i particle index
 	 */
-	private record BoundingBox(Coordinate a, Coordinate b) {
-
-		@Override
-		public String toString() {
-			return a + ", " + b;
-		}
+	private static void printData(ParticleTable particles, int i) {
+		final int[] xs = particles.hull(i)[0], ys = particles.hull(i)[1];
+		StringBuilder convexHullString = new StringBuilder();
+		for (int j = 0; j < xs.length; j++) {
+			convexHullString.append(String.format("(%.2f, %.2f), ", (double) xs[j], (double) ys[j]));
+		}
+
+		if (convexHullString.length() > 0) {
+			convexHullString.setLength(convexHullString.length() - 2);
+		}
+
+		System.out.printf(
+			"| %-5d | %6d |        (%6.2f, %6.2f) | %.4f       | %-9.2f | %.4f      | (%3.0f, %3.0f), (%3.0f, %3.0f)          | %-16.2f | %.4f   | %6.2f   | [%s]  |%n",
+			particles.labels[i],
+			(int) particles.column("area")[i],
+			particles.column("centroidX")[i], particles.column("centroidY")[i],
+			particles.column("eccentricity")[i],
+			particles.column("perimeter")[i],
+			particles.column("circularity")[i],
+			particles.column("left")[i], particles.column("top")[i], particles.column("right")[i], particles.column("bottom")[i],
+			particles.column("convexHullArea")[i],
+			particles.column("density")[i],
+			particles.column("diameter")[i],
+			convexHullString
+		);
 	}
 }
@@ -0,0 +1,230 @@
+package imageprocessing;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+
+import gui.OptionPane;
+import imageprocessing.buffer.BitImage;
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.buffer.IntImage;
+import imageprocessing.morphology.GrayMorphology;
+import imageprocessing.morphology.Reconstruction;
+import imageprocessing.morphology.StructuringElement;
+import main.Picsi;
+import utils.Parallel;
+
+/**
+ * Grayscale morphologic filter and demo, e.g. top-hat filtering of uneven illumination before binarization
+ *
+ */
+public class GrayMorphologicFilter implements IImageProcessor {
+
+	@Override
+	public boolean isEnabled(int imageType) {
+		return imageType == Picsi.IMAGE_TYPE_GRAY;
+	}
+
+	@Override
+	public ImageData run(ImageData inData, int imageType) {
+		Object[] operations = { "Erosion", "Dilation", "Opening", "Closing", "Gradient", "White Top-Hat", "Black Top-Hat", "Fill Holes", "Clear Border", "Regional Maxima" };
+		int ch = OptionPane.showOptionDialog("Grayscale Morphological Operation", SWT.ICON_INFORMATION, operations, 0);
+		if (ch < 0) return null;
+		if (ch == 7) return fillHoles(inData);
+		if (ch == 8) return clearBorder(inData);
+		if (ch == 9) return regionalMaxima(inData);
+
+		Object[] structure = { "Circle-3", "Circle-5", "Circle-7", "Diamond-5", "Diamond-7", "Square-3", "Square-5", "Circle-15", "Square-15" };
+		int s = OptionPane.showOptionDialog("Structure", SWT.ICON_INFORMATION, structure, 0);
+		if (s < 0) return null;
+		StructuringElement se;
+		switch(s) {
+		default:
+		case 0: se = StructuringElement.of(MorphologicFilter.s_circle3, 1, 1); break;
+		case 1: se = StructuringElement.of(MorphologicFilter.s_circle5, 2, 2); break;
+		case 2: se = StructuringElement.of(MorphologicFilter.s_circle7, 3, 3); break;
+		case 3: se = StructuringElement.of(MorphologicFilter.s_diamond5, 2, 2); break;
+		case 4: se = StructuringElement.of(MorphologicFilter.s_diamond7, 3, 3); break;
+		case 5: se = StructuringElement.square(3); break;
+		case 6: se = StructuringElement.square(5); break;
+		case 7: se = StructuringElement.circle(7); break;
+		case 8: se = StructuringElement.square(15); break;
+		}
+
+		switch(ch) {
+		case 0: return erosion(inData, se);
+		case 1: return dilation(inData, se);
+		case 2: return opening(inData, se, 1);
+		case 3: return closing(inData, se, 1);
+		case 4: return gradient(inData, se);
+		case 5: return topHat(inData, se, true);
+		case 6: return topHat(inData, se, false);
+		}
+		return null;
+	}
+
+	/**
+	 * Grayscale erosion (minimum filter)
+	 * @param inData grayscale image
+	 * @param se structuring element
+	 * @return new eroded grayscale image
+	 */
+	public static ImageData erosion(ImageData inData, StructuringElement se) {
+		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
+
+		ImageData outData = new ImageData(inData.width, inData.height, 8, inData.palette);
+		GrayMorphology.erosion(ByteImage.wrap(inData), ByteImage.wrap(outData), se);
+		return outData;
+	}
+
+	/**
+	 * Grayscale dilation (maximum filter)
+	 * @param inData grayscale image
+	 * @param se structuring element
+	 * @return new dilated grayscale image
+	 */
+	public static ImageData dilation(ImageData inData, StructuringElement se) {
+		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
+
+		ImageData outData = new ImageData(inData.width, inData.height, 8, inData.palette);
+		GrayMorphology.dilation(ByteImage.wrap(inData), ByteImage.wrap(outData), se);
+		return outData;
+	}
+
+	/**
+	 * Grayscale opening: multiplicity erosions followed by multiplicity dilations
+	 * @param inData grayscale image
+	 * @param se structuring element
+	 * @param multiplicity
+	 * @return new opened grayscale image
+	 */
+	public static ImageData opening(ImageData inData, StructuringElement se, int multiplicity) {
+		ImageData outData = new ImageData(inData.width, inData.height, 8, inData.palette);
+		sequence(ByteImage.wrap(inData), ByteImage.wrap(outData), se, multiplicity, true);
+		return outData;
+	}
+
+	/**
+	 * Grayscale closing: multiplicity dilations followed by multiplicity erosions
+	 * @param inData grayscale image
+	 * @param se structuring element
+	 * @param multiplicity
+	 * @return new closed grayscale image
+	 */
+	public static ImageData closing(ImageData inData, StructuringElement se, int multiplicity) {
+		ImageData outData = new ImageData(inData.width, inData.height, 8, inData.palette);
+		sequence(ByteImage.wrap(inData), ByteImage.wrap(outData), se, multiplicity, false);
+		return outData;
+	}
+
+	/**
+	 * Morphological gradient: dilation minus erosion
+	 * @param inData grayscale image
+	 * @param se structuring element
+	 * @return new gradient image
+	 */
+	public static ImageData gradient(ImageData inData, StructuringElement se) {
+		final ByteImage in = ByteImage.wrap(inData);
+		final ByteImage eroded = new ByteImage(in.width, in.height);
+		ImageData outData = new ImageData(inData.width, inData.height, 8, inData.palette);
+		final ByteImage out = ByteImage.wrap(outData);
+
+		GrayMorphology.erosion(in, eroded, se);
+		GrayMorphology.dilation(in, out, se);
+		difference(out, eroded, out);
+		return outData;
+	}
+
+	/**
+	 * Top-hat transform
+	 * @param inData grayscale image
+	 * @param se structuring element
+	 * @param white true: white top-hat (image minus opening, bright details),
+	 * false: black top-hat (closing minus image, dark details)
+	 * @return new top-hat image
+	 */
+	public static ImageData topHat(ImageData inData, StructuringElement se, boolean white) {
+		final ByteImage in = ByteImage.wrap(inData);
+		ImageData outData = new ImageData(inData.width, inData.height, 8, inData.palette);
+		final ByteImage out = ByteImage.wrap(outData);
+
+		sequence(in, out, se, 1, white);
+		if (white) difference(in, out, out);
+		else difference(out, in, out);
+		return outData;
+	}
+
+	/**
+	 * Grayscale reconstruction by dilation of marker under mask
+	 * @param marker grayscale image
+	 * @param mask grayscale image of the same size
+	 * @param eightConnected true: 8-neighborhood, false: 4-neighborhood
+	 * @return new reconstructed grayscale image
+	 */
+	public static ImageData reconstruction(ImageData marker, ImageData mask, boolean eightConnected) {
+		IntImage out = IntImage.from(marker);
+		Reconstruction.dilate(out, IntImage.from(mask), eightConnected);
+		return out.toImageData(Picsi.IMAGE_TYPE_GRAY);
+	}
+
+	/**
+	 * Fills all dark regions that aren't connected to the image border up to the level of their surrounding
+	 * @param inData grayscale image
+	 * @return new grayscale image with filled holes
+	 */
+	public static ImageData fillHoles(ImageData inData) {
+		return Reconstruction.fillHoles(IntImage.from(inData), 255, true).toImageData(Picsi.IMAGE_TYPE_GRAY);
+	}
+
+	/**
+	 * Suppresses all bright structures connected to the image border
+	 * @param inData grayscale image
+	 * @return new grayscale image without border structures
+	 */
+	public static ImageData clearBorder(ImageData inData) {
+		return Reconstruction.clearBorder(IntImage.from(inData), true).toImageData(Picsi.IMAGE_TYPE_GRAY);
+	}
+
+	/**
+	 * Regional maxima: 8-connected plateaus without a higher neighbor
+	 * @param inData grayscale image
+	 * @return new binary image (foreground = regional maxima)
+	 */
+	public static ImageData regionalMaxima(ImageData inData) {
+		final IntImage maxima = Reconstruction.regionalMaxima(IntImage.from(inData), true);
+		ImageData outData = ImageProcessing.createImage(inData.width, inData.height, Picsi.IMAGE_TYPE_BINARY);
+		final BitImage out = BitImage.wrap(outData);
+
+		Parallel.For(0, inData.height, v -> {
+			for (int u=0; u < inData.width; u++) out.set(u, v, maxima.get(u, v));
+		});
+		return outData;
+	}
+
+	/**
+	 * Opening or closing alternating between the output plane and one temporary plane
+	 */
+	private static void sequence(ByteImage in, ByteImage out, StructuringElement se, int multiplicity, boolean opening) {
+		final ByteImage tmp = new ByteImage(in.width, in.height);
+		ByteImage src = in;
+
+		for (int i=0; i < 2*multiplicity; i++) {
+			// the last step writes into out
+			final ByteImage dst = ((2*multiplicity - i) % 2 == 1) ? out : tmp;
+
+			if ((i < multiplicity) == opening) GrayMorphology.erosion(src, dst, se);
+			else GrayMorphology.dilation(src, dst, se);
+			src = dst;
+		}
+	}
+
+	/**
+	 * out = max(0, a - b)
+	 */
+	private static void difference(ByteImage a, ByteImage b, ByteImage out) {
+		Parallel.For(0, a.height, v -> {
+			for (int u=0; u < a.width; u++) {
+				out.data[out.index(u, v)] = (byte)Math.max(0, (a.data[a.index(u, v)] & 0xFF) - (b.data[b.index(u, v)] & 0xFF));
+			}
+		});
+	}
+}
@@ -7,6 +7,8 @@ import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.RGB;
 
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.colors.GrayscaleImage;
 import utils.Parallel;
 
 /**
@@ -237,6 +239,72 @@ public class ImageProcessing {
 		return histo;
 	}
 	
+	/**
+	 * Compute the histograms of all RGB channels in one parallel pass over the raw data bytes
+	 * @param inData RGB or RGBA image
+	 * @param luminance true: the luminance histogram (see GrayscaleImage.luminance) is added
+	 * @param alpha true: the alpha histogram is added, all pixels are opaque if the image doesn't have alpha values
+	 * @return histograms { red, green, blue [, luminance] [, alpha] } with 256 classes each
+	 */
+	public static int[][] histogramRGB(ImageData inData, boolean luminance, boolean alpha) {
+		final int nClasses = 256;
+		assert inData.palette.isDirect : "wrong image type";
+
+		final int nHistos = 3 + ((luminance) ? 1 : 0) + ((alpha) ? 1 : 0);
+		final int lumIndex = 3, alphaIndex = nHistos - 1;
+		final int[][] histo = new int[nHistos][nClasses];
+		final ByteImage r = ByteImage.wrapChannel(inData, 0);
+		final ByteImage g = ByteImage.wrapChannel(inData, 1);
+		final ByteImage b = ByteImage.wrapChannel(inData, 2);
+		final ByteImage a = (alpha) ? ByteImage.wrapChannel(inData, 3) : null;
+		final PaletteData palette = inData.palette;
+
+		Parallel.For(0, inData.height,
+			// creator
+			() -> new int[nHistos][nClasses],
+			// loop body
+			(v, h) -> {
+				final int[] hr = h[0], hg = h[1], hb = h[2];
+
+				if (r != null && g != null && b != null) {
+					// direct color image with one byte per channel
+					final int ps = r.pixelStride;
+					int ir = r.index(0, v), ig = g.index(0, v), ib = b.index(0, v);
+
+					for (int u=0; u < inData.width; u++, ir += ps, ig += ps, ib += ps) {
+						final int red = r.data[ir] & 0xFF, green = g.data[ig] & 0xFF, blue = b.data[ib] & 0xFF;
+
+						hr[red]++; hg[green]++; hb[blue]++;
+						if (luminance) h[lumIndex][GrayscaleImage.luminance(red, green, blue)]++;
+					}
+				} else {
+					for (int u=0; u < inData.width; u++) {
+						final RGB rgb = palette.getRGB(inData.getPixel(u, v));
+
+						hr[rgb.red]++; hg[rgb.green]++; hb[rgb.blue]++;
+						if (luminance) h[lumIndex][GrayscaleImage.luminance(rgb.red, rgb.green, rgb.blue)]++;
+					}
+				}
+				if (alpha) {
+					final int[] ha = h[alphaIndex];
+
+					if (a != null) {
+						for (int u=0, i=a.index(0, v); u < inData.width; u++) ha[a.data[i++] & 0xFF]++;
+					} else {
+						ha[255] += inData.width;
+					}
+				}
+			},
+			// reducer
+			h -> {
+				for (int c=0; c < nHistos; c++) {
+					for (int i=0; i < nClasses; i++) histo[c][i] += h[c][i];
+				}
+			}
+		);
+		return histo;
+	}
+
 	/**
 	 * Crops input image of given input rectangle
 	 */
@@ -0,0 +1,143 @@
+package imageprocessing;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.buffer.IntegralImage;
+import main.Picsi;
+
+/**
+ * Lazily computed statistics of an image: histograms, min/max/mean/variance and integral images.
+ * Each statistic is computed on first use and kept until the statistics are dropped, hence the image must not be
+ * changed in the meantime. A document owns the statistics of its image, so that dialogs and processors working
+ * on the document share them, and replaces them whenever it gets a new image.
+ */
+public class ImageStatistics {
+	private final ImageData m_image;
+	private final int m_imageType;
+	private int[] m_histogram;			// pixel values or luminance
+	private int[][] m_histogramRGB;		// red, green, blue, luminance
+	private IntegralImage m_integral;
+	private int m_otsuThreshold = -1;
+
+	/**
+	 * @param image image, which must not be changed while the statistics are in use
+	 * @param imageType
+	 */
+	public ImageStatistics(ImageData image, int imageType) {
+		m_image = image;
+		m_imageType = imageType;
+	}
+
+	/**
+	 * Histogram of the pixel values with 1 << min(8, depth) classes, like ImageProcessing.histogram.
+	 * RGB images use the luminance instead.
+	 * @return shared histogram, must not be changed
+	 */
+	public synchronized int[] histogram() {
+		if (m_histogram == null) {
+			if (isRGB()) {
+				m_histogram = histogramRGB()[3];
+			} else {
+				m_histogram = ImageProcessing.histogram(m_image, 1 << Math.min(8, m_image.depth));
+			}
+		}
+		return m_histogram;
+	}
+
+	/**
+	 * Histograms of the channels of a direct color image
+	 * @return shared histograms { red, green, blue, luminance }, must not be changed
+	 */
+	public synchronized int[][] histogramRGB() {
+		assert m_image.palette.isDirect : "wrong image type";
+
+		if (m_histogramRGB == null) m_histogramRGB = ImageProcessing.histogramRGB(m_image, true, false);
+		return m_histogramRGB;
+	}
+
+	/**
+	 * Histogram of a channel
+	 * @param channel 0 = red, 1 = green, 2 = blue, 3 = luminance of RGB images, ignored for other images
+	 * @return shared histogram, must not be changed
+	 */
+	public int[] histogram(int channel) {
+		return (isRGB()) ? histogramRGB()[channel] : histogram();
+	}
+
+	/**
+	 * @param channel see histogram(channel)
+	 * @return smallest class with pixels or -1 if the image is empty
+	 */
+	public int min(int channel) {
+		final int[] h = histogram(channel);
+		for (int i=0; i < h.length; i++) if (h[i] > 0) return i;
+		return -1;
+	}
+
+	/**
+	 * @param channel see histogram(channel)
+	 * @return largest class with pixels or -1 if the image is empty
+	 */
+	public int max(int channel) {
+		final int[] h = histogram(channel);
+		for (int i=h.length - 1; i >= 0; i--) if (h[i] > 0) return i;
+		return -1;
+	}
+
+	/**
+	 * @param channel see histogram(channel)
+	 * @return mean class
+	 */
+	public double mean(int channel) {
+		final int[] h = histogram(channel);
+		long n = 0, sum = 0;
+
+		for (int i=0; i < h.length; i++) {
+			n += h[i];
+			sum += (long)i*h[i];
+		}
+		return (double)sum/n;
+	}
+
+	/**
+	 * @param channel see histogram(channel)
+	 * @return variance of the classes
+	 */
+	public double variance(int channel) {
+		final int[] h = histogram(channel);
+		final double mean = mean(channel);
+		long n = 0;
+		double sum = 0;
+
+		for (int i=0; i < h.length; i++) {
+			n += h[i];
+			sum += (i - mean)*(i - mean)*h[i];
+		}
+		return sum/n;
+	}
+
+	/**
+	 * Integral images of a grayscale image
+	 * @return shared integral images, must not be changed
+	 */
+	public synchronized IntegralImage integralImage() {
+		assert m_imageType == Picsi.IMAGE_TYPE_GRAY : "wrong image type";
+
+		if (m_integral == null) m_integral = new IntegralImage(ByteImage.wrap(m_image));
+		return m_integral;
+	}
+
+	/**
+	 * Global threshold of Otsu's method, see Binarization.otsuThreshold
+	 * @return threshold
+	 */
+	public synchronized int otsuThreshold() {
+		if (m_otsuThreshold < 0) m_otsuThreshold = Binarization.otsuThreshold(histogram());
+		return m_otsuThreshold;
+	}
+
+	private boolean isRGB() {
+		return m_imageType == Picsi.IMAGE_TYPE_RGB || m_imageType == Picsi.IMAGE_TYPE_RGBA;
+	}
+}
@@ -5,6 +5,11 @@ import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 
 import gui.OptionPane;
+import imageprocessing.buffer.IntImage;
+import imageprocessing.buffer.PackedBinaryImage;
+import imageprocessing.morphology.MorphologyPipeline;
+import imageprocessing.morphology.Reconstruction;
+import imageprocessing.morphology.StructuringElement;
 import main.Picsi;
 import utils.Parallel;
 
@@ -57,9 +62,11 @@ public class MorphologicFilter implements IImageProcessor {
 
 	@Override
 	public ImageData run(ImageData inData, int imageType) {
-		Object[] operations = { "Erosion", "Dilation", "Opening", "Closing", "Inner Contour", "Outer Contour" };
+		Object[] operations = { "Erosion", "Dilation", "Opening", "Closing", "Inner Contour", "Outer Contour", "Fill Holes", "Clear Border" };
 		int ch = OptionPane.showOptionDialog("Morphological Operation", SWT.ICON_INFORMATION, operations, 0);
 		if (ch < 0) return null;
+		if (ch == 6) return fillHoles(inData);
+		if (ch == 7) return clearBorder(inData);
 
 		Object[] structure = { "None", "Dot", "Circle-3", "Circle-5", "Circle-7", "Diamond-5", "Diamond-7", "Square-2", "Square-3", "Square-4", "Square-5" };
 		int s = OptionPane.showOptionDialog("Structure", SWT.ICON_INFORMATION, structure, 2);
@@ -103,28 +110,9 @@ public class MorphologicFilter implements IImageProcessor {
 	public static ImageData erosion(ImageData inData, boolean[][] struct, int cx, int cy) {
 		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_BINARY || ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
 
-		ImageData outData = (ImageData)inData.clone();
-
-		Parallel.For(0, outData.height, v -> {
-			for (int u=0; u < outData.width; u++) {
-				boolean set = true;
-
-				for (int j=0; set && j < struct.length; j++) {
-					final int v0 = v + j - cy;
-
-					for (int i=0; set && i < struct[j].length; i++) {
-						final int u0 = u + i - cx;
-
-						if (struct[j][i] && (v0 < 0 || v0 >= inData.height || u0 < 0 || u0 >= inData.width || inData.getPixel(u0, v0) != s_foreground)) {
-							set = false;
-						}
-					}
-				}
-				if (set) outData.setPixel(u, v, s_foreground); // foreground
-				else outData.setPixel(u, v, s_background); // background
-			}
-		});
-		return outData;
+		PackedBinaryImage out = new PackedBinaryImage(inData.width, inData.height);
+		StructuringElement.of(struct, cx, cy).erosion(PackedBinaryImage.from(inData, s_foreground), out);
+		return unpack(out, inData);
 	}
 
 	/**
@@ -138,29 +126,23 @@ public class MorphologicFilter implements IImageProcessor {
 	public static ImageData dilation(ImageData inData, boolean[][] struct, int cx, int cy) {
 		assert ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_BINARY || ImageProcessing.determineImageType(inData) == Picsi.IMAGE_TYPE_GRAY;
 
-		ImageData outData = new ImageData(inData.width, inData.height, inData.depth, inData.palette); // outData is initialized with 0
-
-		Parallel.For(0, outData.height, v -> {
-			for (int u=0; u < outData.width; u++) {
-				boolean set = false;
-
-				for (int j=0; !set && j < struct.length; j++) {
-					final int v0 = v + j - cy;
-
-					for (int i=0; !set && i < struct[j].length; i++) {
-						final int u0 = u + i - cx;
-
-						if (struct[j][i] && v0 >= 0 && v0 < inData.height && u0 >= 0 && u0 < inData.width && inData.getPixel(u0, v0) == s_foreground) {
-							set = true;
-						}
-					}
-				}
-				if (set) outData.setPixel(u, v, s_foreground); // foreground
-				else outData.setPixel(u, v, s_background); // background
-			}
-		});
+		PackedBinaryImage out = new PackedBinaryImage(inData.width, inData.height);
+		StructuringElement.of(struct, cx, cy).dilation(PackedBinaryImage.from(inData, s_foreground), out);
+		return unpack(out, inData);
+	}
 
-		return outData;
+	/**
+	 * Unpacks a packed image into an image of the same type as inData
+	 * @param image packed image
+	 * @param inData binary image or binarized grayscale image
+	 * @return new binary image or binarized grayscale image
+	 */
+	private static ImageData unpack(PackedBinaryImage image, ImageData inData) {
+		if (inData.depth == 1) {
+			return image.toImageData(inData.palette, s_foreground);
+		} else {
+			return image.toGrayImageData(inData.palette, s_foreground, s_background);
+		}
 	}
 
 	/**
@@ -174,17 +156,7 @@ public class MorphologicFilter implements IImageProcessor {
 	 * @return new opened binary image
 	 */
 	public static ImageData opening(ImageData inData, boolean[][] struct, int cx, int cy, int multiplicity) {
-
-		ImageData outData = (ImageData)inData.clone();
-
-		for(int i = 0; i < multiplicity; i++) {
-			outData = erosion(outData, struct, cx, cy);
-		}
-
-		for(int i = 0; i < multiplicity; i++) {
-			outData = dilation(outData, struct, cx, cy);
-		}
-		return outData;
+		return packedSequence(inData, struct, cx, cy, multiplicity, true);
 	}
 
 	/**
@@ -198,36 +170,107 @@ public class MorphologicFilter implements IImageProcessor {
 	 * @return new closed binary image
 	 */
 	public static ImageData closing(ImageData inData, boolean[][] struct, int cx, int cy, int multiplicity) {
+		return packedSequence(inData, struct, cx, cy, multiplicity, false);
+	}
 
-		ImageData outData = (ImageData)inData.clone();
-
-		for(int i = 0; i < multiplicity; i++) {
-			outData = dilation(outData, struct, cx, cy);
-		}
+	/**
+	 * Opening or closing: the image is packed once and all erosions and dilations 
+	 * run fused in one pass over row tiles
+	 * @param inData binary image or binarized grayscale image
+	 * @param struct all true elements belong to the structure
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 * @param multiplicity
+	 * @param opening true: opening, false: closing
+	 * @return new binary image or binarized grayscale image
+	 */
+	private static ImageData packedSequence(ImageData inData, boolean[][] struct, int cx, int cy, int multiplicity, boolean opening) {
+		final StructuringElement se = StructuringElement.of(struct, cx, cy);
+		final MorphologyPipeline pipeline = (opening) ? MorphologyPipeline.opening(se, multiplicity) : MorphologyPipeline.closing(se, multiplicity);
 
-		for(int i = 0; i < multiplicity; i++) {
-			outData = erosion(outData, struct, cx, cy);
-		}
-		return outData;
+		return unpack(pipeline.run(PackedBinaryImage.from(inData, s_foreground)), inData);
 	}
 
 	/**
-	 * Contour
-	 * @param inData not an indexed-color image
+	 * Contour: the eroded or dilated image is never materialized, but computed tile by tile 
+	 * and immediately combined with the input image
+	 * @param inData binary image or binarized grayscale image
 	 * @param imageType
 	 * @param struct all true elements belong to the structure
 	 * @param cx origin of the structure (hotspot)
 	 * @param cy origin of the structure (hotspot)
-	 * @param inner: true = inner contour, false = outer contour
-	 * @return new closed binary image
+	 * @param inner: true = inner contour (image minus eroded image), false = outer contour (dilated image minus image)
+	 * @return new contour image
 	 */
 	public static ImageData contour(ImageData inData, int imageType, boolean[][] struct, int cx, int cy, boolean inner) {
-		if (inner) {
-			// TODO
-		} else {
-			// TODO
-		}
-		return null;
+		assert imageType == Picsi.IMAGE_TYPE_BINARY || imageType == Picsi.IMAGE_TYPE_GRAY;
+
+		final StructuringElement se = StructuringElement.of(struct, cx, cy);
+		final MorphologyPipeline pipeline = (inner) ? new MorphologyPipeline().erosion(se) : new MorphologyPipeline().dilation(se);
+		PackedBinaryImage out = new PackedBinaryImage(inData.width, inData.height);
+
+		pipeline.runDifference(PackedBinaryImage.from(inData, s_foreground), out, inner);
+		return unpack(out, inData);
 	}
 
+	/**
+	 * Reconstruction by dilation: keeps all foreground regions of mask that contain a foreground pixel of marker
+	 * @param marker binary image or binarized grayscale image
+	 * @param mask binary image or binarized grayscale image of the same size
+	 * @param eightConnected true: 8-neighborhood, false: 4-neighborhood
+	 * @return new reconstructed image of the same type as mask
+	 */
+	public static ImageData reconstruction(ImageData marker, ImageData mask, boolean eightConnected) {
+		IntImage out = toIntImage(marker);
+		Reconstruction.dilate(out, toIntImage(mask), eightConnected);
+		return fromIntImage(out, mask);
+	}
+
+	/**
+	 * Fills all holes of the foreground: 4-connected background regions that don't touch the image border
+	 * @param inData binary image or binarized grayscale image
+	 * @return new image with filled holes
+	 */
+	public static ImageData fillHoles(ImageData inData) {
+		return fromIntImage(Reconstruction.fillHoles(toIntImage(inData), 1, false), inData);
+	}
+
+	/**
+	 * Removes all 4-connected foreground regions touching the image border
+	 * @param inData binary image or binarized grayscale image
+	 * @return new image without border regions
+	 */
+	public static ImageData clearBorder(ImageData inData) {
+		return fromIntImage(Reconstruction.clearBorder(toIntImage(inData), false), inData);
+	}
+
+	/**
+	 * Converts a binary image into a 0/1 plane
+	 * @param inData binary image or binarized grayscale image with pixel values s_foreground and s_background
+	 * @return plane with background 0 and foreground 1
+	 */
+	private static IntImage toIntImage(ImageData inData) {
+		final PackedBinaryImage packed = PackedBinaryImage.from(inData, s_foreground);
+		final IntImage out = new IntImage(inData.width, inData.height);
+
+		Parallel.For(0, out.height, v -> {
+			for (int u=0, o=v*out.width; u < out.width; u++, o++) out.data[o] = (packed.get(u, v)) ? 1 : 0;
+		});
+		return out;
+	}
+
+	/**
+	 * Converts a 0/1 plane into an image of the same type as inData, like unpack
+	 * @param image plane with background 0 and foreground 1
+	 * @param inData binary image or binarized grayscale image
+	 * @return new binary image or binarized grayscale image with pixel values s_foreground and s_background
+	 */
+	private static ImageData fromIntImage(IntImage image, ImageData inData) {
+		final PackedBinaryImage packed = new PackedBinaryImage(image.width, image.height);
+
+		Parallel.For(0, image.height, v -> {
+			for (int u=0, i=v*image.width; u < image.width; u++, i++) packed.set(u, v, image.data[i] != 0);
+		});
+		return unpack(packed, inData);
+	}
 }
@@ -0,0 +1,90 @@
+package imageprocessing.binary;
+
+import imageprocessing.buffer.PackedBinaryImage;
+import utils.Parallel;
+
+/**
+ * Binary morphology on bit-packed images. 
+ * Each line is processed as 64-bit words: a structure element combines a whole word of a horizontally 
+ * shifted input line with AND (erosion) or OR (dilation). Pixels outside the image are background.
+ */
+public class BinaryMorphology {
+	/**
+	 * Erosion: if the structure element is empty, then the eroded image only contains foreground pixels
+	 * @param in input image
+	 * @param out output image of the same size, must not be the input image
+	 * @param struct all true elements belong to the structure
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 */
+	public static void erosion(PackedBinaryImage in, PackedBinaryImage out, boolean[][] struct, int cx, int cy) {
+		morph(in, out, struct, cx, cy, true);
+	}
+
+	/**
+	 * Dilation: if the structure element is empty, then the dilated image is empty, too
+	 * @param in input image
+	 * @param out output image of the same size, must not be the input image
+	 * @param struct all true elements belong to the structure
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 */
+	public static void dilation(PackedBinaryImage in, PackedBinaryImage out, boolean[][] struct, int cx, int cy) {
+		morph(in, out, struct, cx, cy, false);
+	}
+	
+	private static void morph(PackedBinaryImage in, PackedBinaryImage out, boolean[][] struct, int cx, int cy, boolean erosion) {
+		assert in != out : "in-place operation isn't supported";
+		assert in.width == out.width && in.height == out.height : "different image sizes";
+		
+		// collect structure elements relative to the hotspot
+		int n = 0;
+		for (boolean[] row : struct) {
+			for (boolean b : row) if (b) n++;
+		}
+		final int[] dx = new int[n];
+		final int[] dy = new int[n];
+		n = 0;
+		for (int j=0; j < struct.length; j++) {
+			for (int i=0; i < struct[j].length; i++) {
+				if (struct[j][i]) {
+					dx[n] = i - cx;
+					dy[n++] = j - cy;
+				}
+			}
+		}
+		
+		final int nWords = in.wordsPerLine;
+		final long lastMask = in.lastWordMask();
+		
+		// the parallel loop processes bands of consecutive lines
+		Parallel.For(0, in.height, v -> {
+			final int o = v*nWords;
+			boolean empty = false;
+			
+			for (int k=0; k < nWords; k++) out.data[o + k] = (erosion) ? -1L : 0;
+			
+			for (int e=0; !empty && e < dx.length; e++) {
+				final int v0 = v + dy[e];
+				
+				if (v0 < 0 || v0 >= in.height) {
+					// the structure element only hits background
+					if (erosion) empty = true;
+				} else {
+					final int i0 = v0*nWords;
+					final int d = dx[e];
+
+					if (erosion) {
+						for (int k=0; k < nWords; k++) out.data[o + k] &= in.shiftedWord(i0, k, d);
+					} else {
+						for (int k=0; k < nWords; k++) out.data[o + k] |= in.shiftedWord(i0, k, d);
+					}
+				}
+			}
+			if (empty) {
+				for (int k=0; k < nWords; k++) out.data[o + k] = 0;
+			}
+			out.data[o + nWords - 1] &= lastMask;
+		});
+	}
+}
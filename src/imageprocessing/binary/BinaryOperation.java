@@ -1,42 +1,133 @@
 package imageprocessing.binary;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 import org.eclipse.swt.graphics.ImageData;
 
+import imageprocessing.buffer.RunLengthBinaryImage;
 import utils.Parallel;
 
 /**
  * Binary operations
  * Palette: background, foreground
+ * The operations are bitwise on the pixel values. Hence they run directly on the data arrays, read as 64-bit words:
+ * 64 pixels per word for binary images, 8 pixels per word for grayscale images.
+ * NOT swaps foreground and background: indexed images must have the pixel values 0 and 1 only (e.g. binarized grayscale
+ * images), hence NOT flips the lowest bit of each pixel. Direct color images are complemented bitwise.
  * @author Christoph Stamm
  *
  */
 public class BinaryOperation {
-	public static enum BinOp { AND, OR, XOR };
+	public static enum BinOp { AND, OR, XOR, NOT, AND_NOT };
+
+	private static final VarHandle s_words = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
 
 	/**
 	 * Binary image operations
 	 * @param inData1
-	 * @param inData2
-	 * @param op
+	 * @param inData2 ignored by NOT
+	 * @param op NOT: NOT inData1, AND_NOT: inData1 AND NOT inData2
 	 * @return inData1 op inData2
 	 */
 	public static ImageData binaryOperation(ImageData inData1, ImageData inData2, BinOp op) {
 		ImageData outData = (ImageData)inData1.clone();
-		Parallel.For(0, outData.height, v -> {
-			for (int u=0; u < outData.width; u++) {
-				int in1 = inData1.getPixel(u, v);
-				int in2 = inData2.getPixel(u, v);
-				int out = 0;
-				
-				switch(op) {
-				case AND: out = in1 & in2; break; 
-				case OR:  out = in1 | in2; break; 
-				case XOR: out = in1 ^ in2; break; 
+		binaryOperation(inData1, inData2, op, outData);
+		return outData;
+	}
+
+	/**
+	 * Binary image operations into an existing output image, e.g. in-place: outData can be inData1 or inData2
+	 * @param inData1
+	 * @param inData2 ignored by NOT
+	 * @param op NOT: NOT inData1, AND_NOT: inData1 AND NOT inData2
+	 * @param outData output image of the same size and depth
+	 */
+	public static void binaryOperation(ImageData inData1, ImageData inData2, BinOp op, ImageData outData) {
+		final ImageData inData2_ = (op == BinOp.NOT) ? inData1 : inData2;
+		assert inData1.width == inData2_.width && inData1.height == inData2_.height && inData1.depth == inData2_.depth : "different images";
+		assert inData1.width == outData.width && inData1.height == outData.height && inData1.depth == outData.depth : "wrong output image";
+
+		final int h = outData.height;
+		final boolean sameLayout = inData1.bytesPerLine == outData.bytesPerLine && inData2_.bytesPerLine == outData.bytesPerLine;
+		final int lineBytes = (sameLayout) ? outData.bytesPerLine : (outData.width*outData.depth + 7)/8;
+		final long notMask = notMask(outData);
+
+		Parallel.forStrips(h, (s, top, bottom) -> {
+			if (sameLayout) {
+				// the lines of a strip are contiguous
+				apply(inData1.data, inData2_.data, outData.data, top*lineBytes, (bottom - top)*lineBytes, op, notMask);
+			} else {
+				for (int v=top; v < bottom; v++) {
+					apply(inData1.data, v*inData1.bytesPerLine, inData2_.data, v*inData2_.bytesPerLine, outData.data, v*outData.bytesPerLine, lineBytes, op, notMask);
 				}
-				outData.setPixel(u, v, out);
 			}
 		});
-		return outData;
 	}
 
+	/**
+	 * Binary operations on run-length encoded images: the costs depend on the number of runs only
+	 * @param in1
+	 * @param in2 ignored by NOT
+	 * @param op NOT: NOT in1, AND_NOT: in1 AND NOT in2
+	 * @return in1 op in2
+	 */
+	public static RunLengthBinaryImage binaryOperation(RunLengthBinaryImage in1, RunLengthBinaryImage in2, BinOp op) {
+		switch(op) {
+		case AND: return in1.and(in2);
+		case OR:  return in1.or(in2);
+		case XOR: return in1.xor(in2);
+		case NOT: return in1.not();
+		default:  return in1.andNot(in2);
+		}
+	}
+
+	/**
+	 * Bits flipped by NOT in each word: the lowest bit of each pixel of indexed images, all bits of direct color images
+	 */
+	private static long notMask(ImageData imageData) {
+		if (imageData.palette.isDirect) return -1L;
+
+		switch(imageData.depth) {
+		case 2: return 0x5555555555555555L;
+		case 4: return 0x1111111111111111L;
+		case 8: return 0x0101010101010101L;
+		default: return -1L;
+		}
+	}
+
+	private static void apply(byte[] a, byte[] b, byte[] out, int offset, int len, BinOp op, long notMask) {
+		apply(a, offset, b, offset, out, offset, len, op, notMask);
+	}
+
+	/**
+	 * Applies op to len bytes: 8 bytes per step, the rest bytewise
+	 */
+	private static void apply(byte[] a, int ia, byte[] b, int ib, byte[] out, int io, int len, BinOp op, long notMask) {
+		final int words = len & ~7;
+
+		switch(op) {
+		case AND:
+			for (int i=0; i < words; i += 8) s_words.set(out, io + i, (long)s_words.get(a, ia + i) & (long)s_words.get(b, ib + i));
+			for (int i=words; i < len; i++) out[io + i] = (byte)(a[ia + i] & b[ib + i]);
+			break;
+		case OR:
+			for (int i=0; i < words; i += 8) s_words.set(out, io + i, (long)s_words.get(a, ia + i) | (long)s_words.get(b, ib + i));
+			for (int i=words; i < len; i++) out[io + i] = (byte)(a[ia + i] | b[ib + i]);
+			break;
+		case XOR:
+			for (int i=0; i < words; i += 8) s_words.set(out, io + i, (long)s_words.get(a, ia + i) ^ (long)s_words.get(b, ib + i));
+			for (int i=words; i < len; i++) out[io + i] = (byte)(a[ia + i] ^ b[ib + i]);
+			break;
+		case NOT:
+			for (int i=0; i < words; i += 8) s_words.set(out, io + i, (long)s_words.get(a, ia + i) ^ notMask);
+			for (int i=words; i < len; i++) out[io + i] = (byte)(a[ia + i] ^ notMask);
+			break;
+		case AND_NOT:
+			for (int i=0; i < words; i += 8) s_words.set(out, io + i, (long)s_words.get(a, ia + i) & ~(long)s_words.get(b, ib + i));
+			for (int i=words; i < len; i++) out[io + i] = (byte)(a[ia + i] & ~b[ib + i]);
+			break;
+		}
+	}
 }
@@ -0,0 +1,188 @@
+package imageprocessing.binary;
+
+import java.util.Arrays;
+
+import imageprocessing.buffer.IntImage;
+import imageprocessing.buffer.PackedBinaryImage;
+import utils.Parallel;
+
+/**
+ * Parallel two-pass connected-component labeling with run-based union-find.
+ * The image is split into horizontal strips. Each strip extracts its foreground runs from the packed lines
+ * and unites overlapping runs of adjacent lines. Then the runs of adjacent strips are united along the strip
+ * borders, and the labels are painted run by run in parallel.
+ * Unions always attach the root with the larger run index to the root with the smaller one. Hence, the root of
+ * a component is its first run in raster order, and the labels are numbered in raster order of the first pixel
+ * of each component, like a raster-scan flood fill.
+ */
+public class ConnectedComponentLabeling {
+	/**
+	 * Labels the foreground components of a packed binary image
+	 * @param in binary image
+	 * @param labels output: 0 = background, 1..n = components in raster order of their first pixel
+	 * @param eightConnected true: 8-neighborhood, false: 4-neighborhood
+	 * @return number of components n
+	 */
+	public static int label(PackedBinaryImage in, IntImage labels, boolean eightConnected) {
+		assert in.width == labels.width && in.height == labels.height : "different image sizes";
+
+		final int h = in.height;
+		final int nStrips = Parallel.stripCount(h);
+		final Strip[] strips = new Strip[nStrips];
+
+		// first pass: runs and local unions of each strip
+		Parallel.forStrips(h, (s, top, bottom) -> {
+			strips[s] = new Strip(in, top, bottom, eightConnected);
+		});
+
+		// global run indices
+		int nRuns = 0;
+		for (Strip s : strips) {
+			s.offset = nRuns;
+			nRuns += s.nRuns;
+		}
+		final int[] parent = new int[nRuns];
+		Parallel.For(0, nStrips, s -> {
+			final Strip strip = strips[s];
+			for (int i=0; i < strip.nRuns; i++) parent[strip.offset + i] = strip.offset + strip.parent[i];
+		});
+
+		// unite runs along the strip borders
+		for (int s=1; s < nStrips; s++) {
+			final Strip upper = strips[s - 1], lower = strips[s];
+			if (upper.nRuns == 0 || lower.nRuns == 0) continue;
+
+			final int lastRow = lower.top - 1;
+			int i = upper.rowStart(lastRow), j = lower.rowStart(lower.top);
+			final int iEnd = upper.nRuns, jEnd = lower.rowStart(lower.top + 1);
+			final int d = (eightConnected) ? 1 : 0;
+
+			while (i < iEnd && j < jEnd) {
+				if (upper.start[i] <= lower.end[j] + d && lower.start[j] <= upper.end[i] + d) {
+					union(parent, upper.offset + i, lower.offset + j);
+				}
+				if (upper.end[i] < lower.end[j]) i++; else j++;
+			}
+		}
+
+		// second pass: labels in order of the roots
+		final int[] label = new int[nRuns];
+		int n = 0;
+		for (int r=0; r < nRuns; r++) {
+			final int root = find(parent, r);
+			label[r] = (root == r) ? ++n : label[root];
+		}
+
+		// paint runs
+		Parallel.For(0, nStrips, s -> {
+			final Strip strip = strips[s];
+			final int w = labels.width;
+
+			Arrays.fill(labels.data, strip.top*w, strip.bottom*w, 0);
+			for (int i=0; i < strip.nRuns; i++) {
+				final int o = strip.row[i]*w;
+				Arrays.fill(labels.data, o + strip.start[i], o + strip.end[i] + 1, label[strip.offset + i]);
+			}
+		});
+		return n;
+	}
+
+	/**
+	 * Returns the root of run r and halves the path
+	 */
+	private static int find(int[] parent, int r) {
+		while (parent[r] != r) {
+			parent[r] = parent[parent[r]];
+			r = parent[r];
+		}
+		return r;
+	}
+
+	/**
+	 * Unites the components of runs a and b: the smaller root becomes the root of both
+	 */
+	private static void union(int[] parent, int a, int b) {
+		final int ra = find(parent, a), rb = find(parent, b);
+
+		if (ra < rb) parent[rb] = ra;
+		else if (rb < ra) parent[ra] = rb;
+	}
+
+	/**
+	 * Foreground runs of the lines [top, bottom) in raster order with local union-find
+	 */
+	private static class Strip {
+		final int top, bottom;
+		int[] start = new int[64], end = new int[64], row = new int[64], parent = new int[64];
+		int nRuns;
+		int offset;				// global index of the first run
+		final int[] firstRun;	// index of the first run of each line, firstRun[bottom - top] = nRuns
+
+		Strip(PackedBinaryImage in, int top, int bottom, boolean eightConnected) {
+			this.top = top;
+			this.bottom = bottom;
+			firstRun = new int[bottom - top + 1];
+
+			final int d = (eightConnected) ? 1 : 0;
+			int prevStart = 0;
+
+			for (int v=top; v < bottom; v++) {
+				final int base = v*in.wordsPerLine;
+				final int curStart = nRuns;
+				int u = 0;
+
+				firstRun[v - top] = nRuns;
+				while ((u = nextPixel(in, base, u, true)) < in.width) {
+					final int e = nextPixel(in, base, u, false);
+					add(u, e - 1, v);
+					u = e;
+				}
+
+				// unite with overlapping runs of the previous line
+				int i = prevStart, j = curStart;
+				while (i < curStart && j < nRuns) {
+					if (start[i] <= end[j] + d && start[j] <= end[i] + d) union(parent, i, j);
+					if (end[i] < end[j]) i++; else j++;
+				}
+				prevStart = curStart;
+			}
+			firstRun[bottom - top] = nRuns;
+		}
+
+		int rowStart(int v) {
+			return firstRun[v - top];
+		}
+
+		private void add(int s, int e, int v) {
+			if (nRuns == start.length) {
+				final int n = 2*nRuns;
+				start = Arrays.copyOf(start, n);
+				end = Arrays.copyOf(end, n);
+				row = Arrays.copyOf(row, n);
+				parent = Arrays.copyOf(parent, n);
+			}
+			start[nRuns] = s;
+			end[nRuns] = e;
+			row[nRuns] = v;
+			parent[nRuns] = nRuns;
+			nRuns++;
+		}
+
+		/**
+		 * Returns the position of the next foreground (background) pixel at or after u, or the image width
+		 */
+		private static int nextPixel(PackedBinaryImage in, int base, int u, boolean foreground) {
+			if (u >= in.width) return in.width;
+
+			int k = u >>> 6;
+			long word = (foreground) ? in.data[base + k] : ~in.data[base + k];
+
+			word &= -1L >>> (u & 63);
+			while (word == 0) {
+				if (++k == in.wordsPerLine) return in.width;
+				word = (foreground) ? in.data[base + k] : ~in.data[base + k];
+			}
+			return Math.min(in.width, (k << 6) + Long.numberOfLeadingZeros(word));
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package imageprocessing.buffer;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+/**
+ * 1-bit image plane backed by a byte array in the same layout as a binary ImageData:
+ * eight pixels per byte, the leftmost pixel in the most significant bit.
+ * The plane either owns its array or wraps the data array of an ImageData object without copying.
+ */
+public class BitImage {
+	public final int width, height;
+	public final byte[] data;
+	public final int stride;	// bytes per line
+	
+	/**
+	 * Creates a new zero-initialized plane. Lines are padded to 4 bytes like in ImageData.
+	 * @param width
+	 * @param height
+	 */
+	public BitImage(int width, int height) {
+		this(new byte[paddedStride(width)*height], width, height, paddedStride(width));
+	}
+
+	/**
+	 * Creates a plane on existing data
+	 * @param data
+	 * @param width
+	 * @param height
+	 * @param stride bytes per line
+	 */
+	public BitImage(byte[] data, int width, int height, int stride) {
+		assert stride >= (width + 7)/8 && stride*height <= data.length : "data array is too small";
+		this.data = data;
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+	}
+	
+	/**
+	 * Wraps the data of a binary image without copying
+	 * @param imageData image with depth 1
+	 * @return plane sharing the data array with imageData
+	 */
+	public static BitImage wrap(ImageData imageData) {
+		assert imageData.depth == 1 : "wrong depth: " + imageData.depth;
+		return new BitImage(imageData.data, imageData.width, imageData.height, imageData.bytesPerLine);
+	}
+	
+	/**
+	 * Returns pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @return 0 or 1
+	 */
+	public int get(int u, int v) {
+		return (data[v*stride + (u >>> 3)] >>> (7 - (u & 7))) & 1;
+	}
+	
+	/**
+	 * Sets pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @param bit 0 or 1
+	 */
+	public void set(int u, int v, int bit) {
+		final int i = v*stride + (u >>> 3);
+		final int mask = 0x80 >>> (u & 7);
+		
+		if (bit != 0) data[i] |= mask;
+		else data[i] &= ~mask;
+	}
+	
+	/**
+	 * Unpacks line v into one byte per pixel
+	 * @param v line
+	 * @param line output array with at least width elements
+	 */
+	public void getLine(int v, byte[] line) {
+		getLine(v, line, 0);
+	}
+	
+	/**
+	 * Unpacks line v into one byte per pixel
+	 * @param v line
+	 * @param line output array
+	 * @param offset index of the first pixel in the output array
+	 */
+	public void getLine(int v, byte[] line, int offset) {
+		final int i0 = v*stride;
+		
+		for (int u = 0; u < width; u++) {
+			line[offset + u] = (byte)((data[i0 + (u >>> 3)] >>> (7 - (u & 7))) & 1);
+		}
+	}
+	
+	/**
+	 * Packs one byte per pixel into line v. Only the least significant bit of each input byte is used.
+	 * @param v line
+	 * @param line input array with at least width elements
+	 */
+	public void setLine(int v, byte[] line) {
+		int i = v*stride;
+		int u = 0;
+		
+		for (; u + 8 <= width; u += 8) {
+			data[i++] = (byte)((line[u] & 1) << 7 | (line[u + 1] & 1) << 6 | (line[u + 2] & 1) << 5 | (line[u + 3] & 1) << 4 
+					| (line[u + 4] & 1) << 3 | (line[u + 5] & 1) << 2 | (line[u + 6] & 1) << 1 | (line[u + 7] & 1));
+		}
+		if (u < width) {
+			int b = 0;
+			for (int s = 7; u < width; u++, s--) b |= (line[u] & 1) << s;
+			data[i] = (byte)b;
+		}
+	}
+	
+	/**
+	 * Returns a binary image that shares the data array with this plane if possible, 
+	 * otherwise the pixels are copied into a new image.
+	 * @param palette palette with two entries
+	 * @return image data
+	 */
+	public ImageData toImageData(PaletteData palette) {
+		final int bytes = (width + 7)/8;
+		
+		if (stride == paddedStride(width)) return new ImageData(width, height, 1, palette, 4, data);
+		if (stride == bytes) return new ImageData(width, height, 1, palette, 1, data);
+
+		ImageData imageData = new ImageData(width, height, 1, palette);
+		for (int v = 0; v < height; v++) {
+			System.arraycopy(data, v*stride, imageData.data, v*imageData.bytesPerLine, bytes);
+		}
+		return imageData;
+	}
+	
+	/**
+	 * Returns the line length of a zero-initialized plane
+	 * @param width
+	 * @return number of bytes per line padded to a multiple of 4
+	 */
+	static int paddedStride(int width) {
+		return ((width + 7)/8 + 3) & ~3;
+	}
+}
@@ -0,0 +1,171 @@
+package imageprocessing.buffer;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+/**
+ * 8-bit image plane backed by a byte array.
+ * The plane either owns its array or wraps the data array of an ImageData object without copying.
+ * Pixel (u,v) is stored at data[offset + v*stride + u*pixelStride]. A plane of interleaved RGB(A) data
+ * describes one channel (pixelStride = bytes per pixel).
+ */
+public class ByteImage {
+	public final int width, height;
+	public final byte[] data;
+	public final int offset;		// index of pixel (0,0)
+	public final int pixelStride;	// distance between horizontally adjacent pixels
+	public final int stride;		// distance between vertically adjacent pixels
+
+	/**
+	 * Creates a new zero-initialized plane. Lines are padded to 4 bytes like in ImageData.
+	 * @param width
+	 * @param height
+	 */
+	public ByteImage(int width, int height) {
+		this(new byte[paddedStride(width)*height], width, height, 0, 1, paddedStride(width));
+	}
+	
+	/**
+	 * Creates a plane on existing data
+	 * @param data
+	 * @param width
+	 * @param height
+	 * @param offset index of pixel (0,0)
+	 * @param pixelStride distance between horizontally adjacent pixels
+	 * @param stride distance between vertically adjacent pixels
+	 */
+	public ByteImage(byte[] data, int width, int height, int offset, int pixelStride, int stride) {
+		assert offset + (height - 1)*stride + (width - 1)*pixelStride < data.length : "data array is too small";
+		this.data = data;
+		this.width = width;
+		this.height = height;
+		this.offset = offset;
+		this.pixelStride = pixelStride;
+		this.stride = stride;
+	}
+	
+	/**
+	 * Wraps the data of an 8-bit image (grayscale or indexed color) without copying
+	 * @param imageData image with depth 8
+	 * @return plane sharing the data array with imageData
+	 */
+	public static ByteImage wrap(ImageData imageData) {
+		assert imageData.depth == 8 : "wrong depth: " + imageData.depth;
+		return new ByteImage(imageData.data, imageData.width, imageData.height, 0, 1, imageData.bytesPerLine);
+	}
+	
+	/**
+	 * Wraps one channel of a direct color image without copying.
+	 * @param imageData RGB or RGBA image
+	 * @param channel 0 = red, 1 = green, 2 = blue, 3 = alpha
+	 * @return plane sharing the data array with imageData or null if the channel isn't stored in separate bytes
+	 */
+	public static ByteImage wrapChannel(ImageData imageData, int channel) {
+		assert 0 <= channel && channel < 4 : "wrong channel: " + channel;
+		
+		if (channel == 3) {
+			if (imageData.getTransparencyType() != SWT.TRANSPARENCY_ALPHA || imageData.alphaData == null) return null;
+			return new ByteImage(imageData.alphaData, imageData.width, imageData.height, 0, 1, imageData.width);
+		}
+		
+		final PaletteData palette = imageData.palette;
+		if (!palette.isDirect || (imageData.depth != 24 && imageData.depth != 32)) return null;
+		
+		final int mask = (channel == 0) ? palette.redMask : (channel == 1) ? palette.greenMask : palette.blueMask;
+		final int shift = Integer.numberOfTrailingZeros(mask);
+		if ((shift & 7) != 0 || mask != 0xFF << shift) return null;
+		
+		// pixels are stored with the most significant byte first
+		final int bytesPerPixel = imageData.depth/8;
+		return new ByteImage(imageData.data, imageData.width, imageData.height, bytesPerPixel - 1 - shift/8, bytesPerPixel, imageData.bytesPerLine);
+	}
+	
+	/**
+	 * Wraps all bytes of the pixels of an image with a depth of 8, 16, 24, or 32 bits without copying.
+	 * A pixel consists of pixelStride consecutive bytes.
+	 * @param imageData
+	 * @return plane sharing the data array with imageData or null if pixels aren't byte aligned
+	 */
+	public static ByteImage wrapPixels(ImageData imageData) {
+		if ((imageData.depth & 7) != 0) return null;
+		return new ByteImage(imageData.data, imageData.width, imageData.height, 0, imageData.depth/8, imageData.bytesPerLine);
+	}
+	
+	/**
+	 * Returns the array index of pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @return array index
+	 */
+	public int index(int u, int v) {
+		return offset + v*stride + u*pixelStride;
+	}
+	
+	/**
+	 * Returns the unsigned value of pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @return value in range [0, 255]
+	 */
+	public int get(int u, int v) {
+		return data[offset + v*stride + u*pixelStride] & 0xFF;
+	}
+	
+	/**
+	 * Sets the value of pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @param value in range [0, 255]
+	 */
+	public void set(int u, int v, int value) {
+		data[offset + v*stride + u*pixelStride] = (byte)value;
+	}
+	
+	/**
+	 * Copies all bytes of pixel (su,sv) of the source plane to pixel (u,v) of this plane.
+	 * Both planes must have the same pixelStride.
+	 * @param src source plane
+	 * @param su
+	 * @param sv
+	 * @param u
+	 * @param v
+	 */
+	public void copyPixel(ByteImage src, int su, int sv, int u, int v) {
+		assert src.pixelStride == pixelStride : "different pixel strides";
+		System.arraycopy(src.data, src.offset + sv*src.stride + su*pixelStride, data, offset + v*stride + u*pixelStride, pixelStride);
+	}
+	
+	/**
+	 * Returns an image with depth 8 that shares the data array with this plane if possible, 
+	 * otherwise the pixels are copied into a new image.
+	 * @param palette 8-bit palette, e.g. the palette of a grayscale image
+	 * @return image data
+	 */
+	public ImageData toImageData(PaletteData palette) {
+		if (offset == 0 && pixelStride == 1) {
+			if (stride == paddedStride(width)) return new ImageData(width, height, 8, palette, 4, data);
+			if (stride == width) return new ImageData(width, height, 8, palette, 1, data);
+		}
+		ImageData imageData = new ImageData(width, height, 8, palette);
+		
+		for (int v = 0; v < height; v++) {
+			int i = offset + v*stride;
+			int o = v*imageData.bytesPerLine;
+			
+			for (int u = 0; u < width; u++, i += pixelStride) {
+				imageData.data[o++] = data[i];
+			}
+		}
+		return imageData;
+	}
+	
+	/**
+	 * Returns the line length of a zero-initialized plane
+	 * @param width
+	 * @return width padded to a multiple of 4
+	 */
+	static int paddedStride(int width) {
+		return (width + 3) & ~3;
+	}
+}
@@ -0,0 +1,107 @@
+package imageprocessing.buffer;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import imageprocessing.ImageProcessing;
+import main.Picsi;
+import utils.Parallel;
+
+/**
+ * Floating point image plane backed by a float array without line padding.
+ * Pixel (u,v) is stored at data[v*width + u].
+ * Conversions from and to ImageData always copy, because ImageData stores bytes.
+ */
+public class FloatImage {
+	public final int width, height;
+	public final float[] data;
+	
+	/**
+	 * Creates a new zero-initialized plane
+	 * @param width
+	 * @param height
+	 */
+	public FloatImage(int width, int height) {
+		this(new float[width*height], width, height);
+	}
+	
+	/**
+	 * Creates a plane on existing data
+	 * @param data array with at least width*height elements
+	 * @param width
+	 * @param height
+	 */
+	public FloatImage(float[] data, int width, int height) {
+		assert width*height <= data.length : "data array is too small";
+		this.data = data;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Copies an 8-bit plane
+	 * @param in
+	 * @return new plane
+	 */
+	public static FloatImage from(ByteImage in) {
+		final int w = in.width;
+		final FloatImage out = new FloatImage(w, in.height);
+		
+		Parallel.For(0, in.height, v -> {
+			int i = in.index(0, v);
+			int o = v*w;
+			
+			for (int u = 0; u < w; u++, i += in.pixelStride) out.data[o++] = in.data[i] & 0xFF;
+		});
+		return out;
+	}
+	
+	/**
+	 * Copies an 8-bit plane into the upper left corner of this plane
+	 * @param in plane not larger than this plane
+	 * @param norm the pixel values are divided by norm
+	 */
+	public void copy(ByteImage in, float norm) {
+		assert in.width <= width && in.height <= height : "plane is too large";
+		
+		Parallel.For(0, in.height, v -> {
+			int i = in.index(0, v);
+			int o = v*width;
+			
+			for (int u = 0; u < in.width; u++, i += in.pixelStride) data[o++] = (in.data[i] & 0xFF)/norm;
+		});
+	}
+	
+	/**
+	 * Copies the upper left corner of this plane into an 8-bit plane. Values are rounded and clamped to [0,255].
+	 * @param out plane not larger than this plane
+	 */
+	public void copyTo(ByteImage out) {
+		assert out.width <= width && out.height <= height : "plane is too large";
+		
+		Parallel.For(0, out.height, v -> {
+			int i = v*width;
+			int o = out.index(0, v);
+			
+			for (int u = 0; u < out.width; u++, o += out.pixelStride) out.data[o] = (byte)ImageProcessing.clamp8((double)data[i++]);
+		});
+	}
+	
+	public float get(int u, int v) {
+		return data[v*width + u];
+	}
+	
+	public void set(int u, int v, float value) {
+		data[v*width + u] = value;
+	}
+	
+	/**
+	 * Creates a grayscale image. Values are rounded and clamped to [0,255].
+	 * @return new grayscale image
+	 */
+	public ImageData toImageData() {
+		final ImageData outData = ImageProcessing.createImage(width, height, Picsi.IMAGE_TYPE_GRAY);
+		
+		copyTo(ByteImage.wrap(outData));
+		return outData;
+	}
+}
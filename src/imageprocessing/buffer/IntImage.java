@@ -0,0 +1,113 @@
+package imageprocessing.buffer;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import imageprocessing.ImageProcessing;
+import main.Picsi;
+import utils.Parallel;
+
+/**
+ * 32-bit integer image plane backed by an int array without line padding.
+ * Pixel (u,v) is stored at data[v*width + u].
+ * Conversions from and to ImageData always copy, because ImageData stores bytes.
+ */
+public class IntImage {
+	public final int width, height;
+	public final int[] data;
+	
+	/**
+	 * Creates a new zero-initialized plane
+	 * @param width
+	 * @param height
+	 */
+	public IntImage(int width, int height) {
+		this(new int[width*height], width, height);
+	}
+	
+	/**
+	 * Creates a plane on existing data
+	 * @param data array with at least width*height elements
+	 * @param width
+	 * @param height
+	 */
+	public IntImage(int[] data, int width, int height) {
+		assert width*height <= data.length : "data array is too small";
+		this.data = data;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Copies the raw pixel values of an image, e.g. the 32-bit values of a GRAY32 image
+	 * @param imageData
+	 * @return new plane containing the pixel values
+	 */
+	public static IntImage from(ImageData imageData) {
+		final int w = imageData.width;
+		final IntImage out = new IntImage(w, imageData.height);
+		final byte[] in = imageData.data;
+		final int bpl = imageData.bytesPerLine;
+		
+		Parallel.For(0, imageData.height, v -> {
+			final int o = v*w;
+			int i = v*bpl;
+			
+			switch(imageData.depth) {
+			case 1:
+				for (int u = 0; u < w; u++) out.data[o + u] = (in[i + (u >>> 3)] >>> (7 - (u & 7))) & 1;
+				break;
+			case 8:
+				for (int u = 0; u < w; u++) out.data[o + u] = in[i++] & 0xFF;
+				break;
+			case 24:
+				for (int u = 0; u < w; u++, i += 3) out.data[o + u] = (in[i] & 0xFF) << 16 | (in[i + 1] & 0xFF) << 8 | (in[i + 2] & 0xFF);
+				break;
+			case 32:
+				for (int u = 0; u < w; u++, i += 4) out.data[o + u] = in[i] << 24 | (in[i + 1] & 0xFF) << 16 | (in[i + 2] & 0xFF) << 8 | (in[i + 3] & 0xFF);
+				break;
+			default:
+				for (int u = 0; u < w; u++) out.data[o + u] = imageData.getPixel(u, v);
+			}
+		});
+		return out;
+	}
+	
+	public int get(int u, int v) {
+		return data[v*width + u];
+	}
+	
+	public void set(int u, int v, int value) {
+		data[v*width + u] = value;
+	}
+	
+	/**
+	 * Creates a grayscale image (values are clamped to [0,255]) or a GRAY32 image (raw values)
+	 * @param imageType Picsi.IMAGE_TYPE_GRAY or Picsi.IMAGE_TYPE_GRAY32
+	 * @return new image
+	 */
+	public ImageData toImageData(int imageType) {
+		assert imageType == Picsi.IMAGE_TYPE_GRAY || imageType == Picsi.IMAGE_TYPE_GRAY32 : "wrong image type: " + imageType;
+		
+		final ImageData outData = ImageProcessing.createImage(width, height, imageType);
+		final byte[] out = outData.data;
+		final int bpl = outData.bytesPerLine;
+		
+		Parallel.For(0, height, v -> {
+			int i = v*width;
+			int o = v*bpl;
+			
+			if (imageType == Picsi.IMAGE_TYPE_GRAY) {
+				for (int u = 0; u < width; u++) out[o++] = (byte)ImageProcessing.clamp8(data[i++]);
+			} else {
+				for (int u = 0; u < width; u++) {
+					final int p = data[i++];
+					out[o++] = (byte)(p >>> 24);
+					out[o++] = (byte)(p >>> 16);
+					out[o++] = (byte)(p >>> 8);
+					out[o++] = (byte)p;
+				}
+			}
+		});
+		return outData;
+	}
+}
@@ -0,0 +1,99 @@
+package imageprocessing.buffer;
+
+import utils.Parallel;
+
+/**
+ * Integral images (summed-area tables) of the pixel values and of their squares.
+ * Entry (u,v) holds the sum over all pixels (x,y) with x < u and y < v, hence the tables have (width + 1)*(height + 1)
+ * entries with a zero first line and column. The sum of any rectangle costs four lookups, independent of its size.
+ * The sums are stored in long, so they don't overflow for 8-bit images of any practical size.
+ */
+public class IntegralImage {
+	public final int width, height;		// size of the image
+	public final long[] sum, sumOfSquares;	// entry (u,v) at v*(width + 1) + u
+
+	/**
+	 * Computes the integral images of a grayscale plane: row prefix sums in parallel over lines,
+	 * then column prefix sums in parallel over bands of columns
+	 * @param in grayscale plane
+	 */
+	public IntegralImage(ByteImage in) {
+		width = in.width;
+		height = in.height;
+
+		final int stride = width + 1;
+		sum = new long[stride*(height + 1)];
+		sumOfSquares = new long[stride*(height + 1)];
+
+		Parallel.For(0, height, v -> {
+			final int o = (v + 1)*stride + 1;
+			int i = in.index(0, v);
+			long s = 0, s2 = 0;
+
+			for (int u=0; u < width; u++, i += in.pixelStride) {
+				final int p = in.data[i] & 0xFF;
+				s += p;
+				s2 += p*p;
+				sum[o + u] = s;
+				sumOfSquares[o + u] = s2;
+			}
+		});
+
+		final int bandWidth = 64;
+		Parallel.For(0, (width + bandWidth - 1)/bandWidth, b -> {
+			final int u0 = 1 + b*bandWidth, u1 = Math.min(stride, u0 + bandWidth);
+
+			for (int v=2; v <= height; v++) {
+				final int o = v*stride, p = o - stride;
+
+				for (int u=u0; u < u1; u++) {
+					sum[o + u] += sum[p + u];
+					sumOfSquares[o + u] += sumOfSquares[p + u];
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sum of the pixel values in the rectangle [x0, x1) x [y0, y1)
+	 * @param x0
+	 * @param y0
+	 * @param x1 exclusive
+	 * @param y1 exclusive
+	 * @return sum
+	 */
+	public long sum(int x0, int y0, int x1, int y1) {
+		return rectangle(sum, x0, y0, x1, y1);
+	}
+
+	/**
+	 * Sum of the squared pixel values in the rectangle [x0, x1) x [y0, y1)
+	 * @param x0
+	 * @param y0
+	 * @param x1 exclusive
+	 * @param y1 exclusive
+	 * @return sum of squares
+	 */
+	public long sumOfSquares(int x0, int y0, int x1, int y1) {
+		return rectangle(sumOfSquares, x0, y0, x1, y1);
+	}
+
+	/**
+	 * @return sum of all pixel values
+	 */
+	public long total() {
+		return sum[sum.length - 1];
+	}
+
+	/**
+	 * @return sum of all squared pixel values
+	 */
+	public long totalOfSquares() {
+		return sumOfSquares[sumOfSquares.length - 1];
+	}
+
+	private long rectangle(long[] table, int x0, int y0, int x1, int y1) {
+		final int stride = width + 1;
+		return table[y1*stride + x1] - table[y0*stride + x1] - table[y1*stride + x0] + table[y0*stride + x0];
+	}
+}
@@ -0,0 +1,49 @@
+package imageprocessing.buffer;
+
+import org.eclipse.swt.graphics.ImageData;
+
+/**
+ * Label map: each pixel holds the label of its region, 0 is background.
+ * Backed by an int array without line padding, hence the number of labels isn't limited by a pixel depth
+ * and labels never wrap around.
+ */
+public class LabelImage extends IntImage {
+	/**
+	 * Creates a new label map without labels
+	 * @param width
+	 * @param height
+	 */
+	public LabelImage(int width, int height) {
+		super(width, height);
+	}
+	
+	/**
+	 * Creates a label map on existing data
+	 * @param data array with at least width*height elements
+	 * @param width
+	 * @param height
+	 */
+	public LabelImage(int[] data, int width, int height) {
+		super(data, width, height);
+	}
+	
+	/**
+	 * Copies the pixel values of a labeled image, e.g. a labeled grayscale image
+	 * @param imageData
+	 * @return new label map
+	 */
+	public static LabelImage from(ImageData imageData) {
+		final IntImage image = IntImage.from(imageData);
+		return new LabelImage(image.data, image.width, image.height);
+	}
+	
+	/**
+	 * Returns the largest label
+	 * @return largest label or 0 if there isn't any label
+	 */
+	public int maxLabel() {
+		int max = 0;
+		for (int label : data) max = Math.max(max, label);
+		return max;
+	}
+}
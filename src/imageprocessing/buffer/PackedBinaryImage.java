@@ -0,0 +1,220 @@
+package imageprocessing.buffer;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+import utils.Parallel;
+
+/**
+ * Binary image packed into 64-bit words: 64 pixels per word, the leftmost pixel in the most significant bit.
+ * A set bit is a foreground pixel. Each line starts with a new word and unused bits of the last word of a line are 0.
+ */
+public class PackedBinaryImage {
+	public final int width, height;
+	public final int wordsPerLine;
+	public final long[] data;
+	
+	/**
+	 * Creates a new image containing background pixels only
+	 * @param width
+	 * @param height
+	 */
+	public PackedBinaryImage(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.wordsPerLine = (width + 63) >>> 6;
+		this.data = new long[wordsPerLine*height];
+	}
+	
+	/**
+	 * Packs a binary image or a binarized grayscale image
+	 * @param imageData binary image or grayscale image
+	 * @param foreground pixel value of foreground pixels
+	 * @return new packed image
+	 */
+	public static PackedBinaryImage from(ImageData imageData, int foreground) {
+		assert imageData.depth == 1 || imageData.depth == 8 : "wrong depth: " + imageData.depth;
+		
+		final PackedBinaryImage out = new PackedBinaryImage(imageData.width, imageData.height);
+		
+		if (imageData.depth == 8) {
+			final ByteImage in = ByteImage.wrap(imageData);
+			final byte fg = (byte)foreground;
+			
+			Parallel.For(0, out.height, v -> {
+				final int i0 = in.index(0, v);
+				final int o = v*out.wordsPerLine;
+				
+				for (int u = 0; u < out.width; u++) {
+					if (in.data[i0 + u] == fg) out.data[o + (u >>> 6)] |= Long.MIN_VALUE >>> (u & 63);
+				}
+			});
+			return out;
+		}
+		
+		final byte[] in = imageData.data;
+		final int bytes = (imageData.width + 7) >>> 3;
+		final int n = out.wordsPerLine;
+		final long invert = (foreground == 0) ? -1L : 0;
+		
+		Parallel.For(0, out.height, v -> {
+			final int i0 = v*imageData.bytesPerLine;
+			final int o = v*n;
+			
+			for (int k = 0, b = 0; k < n; k++) {
+				long w = 0;
+				for (int s = 56; s >= 0; s -= 8, b++) {
+					if (b < bytes) w |= (in[i0 + b] & 0xFFL) << s;
+				}
+				out.data[o + k] = w ^ invert;
+			}
+			out.data[o + n - 1] &= out.lastWordMask();
+		});
+		return out;
+	}
+	
+	/**
+	 * Unpacks this image into a binary image
+	 * @param palette palette of the binary image
+	 * @param foreground pixel value of foreground pixels (0 or 1)
+	 * @return new binary image
+	 */
+	public ImageData toImageData(PaletteData palette, int foreground) {
+		final ImageData outData = new ImageData(width, height, 1, palette);
+		final byte[] out = outData.data;
+		final int bytes = (width + 7) >>> 3;
+		final long invert = (foreground == 0) ? -1L : 0;
+		
+		Parallel.For(0, height, v -> {
+			final int i0 = v*wordsPerLine;
+			final int o = v*outData.bytesPerLine;
+			
+			for (int b = 0; b < bytes; b++) {
+				out[o + b] = (byte)((data[i0 + (b >>> 3)] ^ invert) >>> (56 - ((b & 7) << 3)));
+			}
+		});
+		return outData;
+	}
+	
+	/**
+	 * Unpacks this image into a binarized grayscale image
+	 * @param palette palette of the grayscale image
+	 * @param foreground pixel value of foreground pixels
+	 * @param background pixel value of background pixels
+	 * @return new grayscale image
+	 */
+	public ImageData toGrayImageData(PaletteData palette, int foreground, int background) {
+		final ImageData outData = new ImageData(width, height, 8, palette);
+		final byte[] out = outData.data;
+		final byte fg = (byte)foreground, bg = (byte)background;
+		
+		Parallel.For(0, height, v -> {
+			final int i0 = v*wordsPerLine;
+			final int o = v*outData.bytesPerLine;
+			
+			for (int u = 0; u < width; u++) {
+				out[o + u] = ((data[i0 + (u >>> 6)] << (u & 63)) < 0) ? fg : bg;
+			}
+		});
+		return outData;
+	}
+	
+	/**
+	 * Creates a larger copy of this image surrounded by background pixels
+	 * @param border border width
+	 * @return new image of size (width + 2*border) x (height + 2*border)
+	 */
+	public PackedBinaryImage padded(int border) {
+		final PackedBinaryImage out = new PackedBinaryImage(width + 2*border, height + 2*border);
+		
+		Parallel.For(0, height, v -> {
+			final int o = (v + border)*out.wordsPerLine;
+			
+			for (int k = 0; k < out.wordsPerLine; k++) out.data[o + k] = shiftedWord(v*wordsPerLine, k, -border);
+		});
+		return out;
+	}
+	
+	/**
+	 * Copies a part of this image into out
+	 * @param x left border of the part
+	 * @param y top border of the part
+	 * @param out output image, its size defines the size of the part
+	 */
+	public void crop(int x, int y, PackedBinaryImage out) {
+		assert x + out.width <= width && y + out.height <= height : "part is outside of this image";
+		final long lastMask = out.lastWordMask();
+		
+		Parallel.For(0, out.height, v -> {
+			final int o = v*out.wordsPerLine;
+			
+			for (int k = 0; k < out.wordsPerLine; k++) out.data[o + k] = shiftedWord((v + y)*wordsPerLine, k, x);
+			out.data[o + out.wordsPerLine - 1] &= lastMask;
+		});
+	}
+	
+	/**
+	 * Returns pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @return true if (u,v) is a foreground pixel
+	 */
+	public boolean get(int u, int v) {
+		return (data[v*wordsPerLine + (u >>> 6)] << (u & 63)) < 0;
+	}
+	
+	/**
+	 * Sets pixel (u,v)
+	 * @param u
+	 * @param v
+	 * @param foreground
+	 */
+	public void set(int u, int v, boolean foreground) {
+		final int i = v*wordsPerLine + (u >>> 6);
+		final long mask = Long.MIN_VALUE >>> (u & 63);
+		
+		if (foreground) data[i] |= mask;
+		else data[i] &= ~mask;
+	}
+
+	/**
+	 * Returns the mask of the used bits in the last word of a line
+	 * @return bit mask
+	 */
+	public long lastWordMask() {
+		final int rest = width & 63;
+		return (rest == 0) ? -1L : -1L << (64 - rest);
+	}
+	
+	/**
+	 * Returns the 64 pixels starting at pixel position 64*k + dx of the line beginning at data[lineStart].
+	 * Pixels outside the line are 0. 
+	 * @param lineStart index of the first word of the line
+	 * @param k word index
+	 * @param dx horizontal pixel shift, can be negative
+	 * @return shifted word
+	 */
+	public long shiftedWord(int lineStart, int k, int dx) {
+		return shiftedWord(data, lineStart, wordsPerLine, k, dx);
+	}
+
+	/**
+	 * Returns the 64 pixels starting at pixel position 64*k + dx of a packed line beginning at line[lineStart].
+	 * Pixels outside the line are 0. 
+	 * @param line packed line data
+	 * @param lineStart index of the first word of the line
+	 * @param nWords number of words of the line
+	 * @param k word index
+	 * @param dx horizontal pixel shift, can be negative
+	 * @return shifted word
+	 */
+	public static long shiftedWord(long[] line, int lineStart, int nWords, int k, int dx) {
+		final int q = k + (dx >> 6);
+		final int r = dx & 63;
+		final long w0 = (q >= 0 && q < nWords) ? line[lineStart + q] : 0;
+		
+		if (r == 0) return w0;
+		final long w1 = (q + 1 >= 0 && q + 1 < nWords) ? line[lineStart + q + 1] : 0;
+		return (w0 << r) | (w1 >>> (64 - r));
+	}
+}
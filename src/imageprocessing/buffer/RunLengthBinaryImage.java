@@ -0,0 +1,534 @@
+package imageprocessing.buffer;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+
+import utils.Parallel;
+
+/**
+ * Run-length encoded binary image: the foreground pixels of each line are stored as runs [start, end] (end inclusive)
+ * in raster order. The runs of line v are start[i], end[i] for rowStart[v] <= i < rowStart[v + 1].
+ * Runs of a line are maximal, i.e. they neither overlap nor touch.
+ * Binary operations, dilations, labeling and area/centroid work on the runs only, hence their costs
+ * grow with the number of runs and not with the number of pixels. This pays off for sparse images like
+ * scanned documents or particle images, where most lines only contain a few runs.
+ * The operations are parallel over horizontal strips of lines.
+ */
+public class RunLengthBinaryImage {
+	private static final int AND = 0b1000, OR = 0b1110, XOR = 0b0110, AND_NOT = 0b0100;	// truth tables indexed by 2*a + b
+
+	public final int width, height;
+	public final int[] rowStart;		// index of the first run of each line, rowStart[height] = number of runs
+	public final int[] start, end;		// runs, end inclusive
+
+	/**
+	 * Creates an image on existing runs
+	 * @param width
+	 * @param height
+	 * @param rowStart index of the first run of each line, height + 1 entries
+	 * @param start first pixel of each run
+	 * @param end last pixel of each run
+	 */
+	public RunLengthBinaryImage(int width, int height, int[] rowStart, int[] start, int[] end) {
+		assert rowStart.length == height + 1 && start.length >= rowStart[height] && end.length >= rowStart[height] : "wrong run arrays";
+		this.width = width;
+		this.height = height;
+		this.rowStart = rowStart;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Encodes a binary image or a binarized grayscale image
+	 * @param imageData binary image or grayscale image
+	 * @param foreground pixel value of foreground pixels
+	 * @return new run-length encoded image
+	 */
+	public static RunLengthBinaryImage from(ImageData imageData, int foreground) {
+		return from(PackedBinaryImage.from(imageData, foreground));
+	}
+
+	/**
+	 * Encodes a packed binary image. Words without a run boundary are skipped.
+	 * @param in packed image
+	 * @return new run-length encoded image
+	 */
+	public static RunLengthBinaryImage from(PackedBinaryImage in) {
+		return build(in.width, in.height, (v, out) -> {
+			final int base = v*in.wordsPerLine;
+			int u = 0;
+
+			while ((u = nextPixel(in, base, u, true)) < in.width) {
+				final int e = nextPixel(in, base, u, false);
+				out.add(u, e - 1);
+				u = e;
+			}
+		});
+	}
+
+	/**
+	 * Decodes this image into a packed binary image
+	 * @return new packed image
+	 */
+	public PackedBinaryImage toPacked() {
+		final PackedBinaryImage out = new PackedBinaryImage(width, height);
+
+		Parallel.For(0, height, v -> {
+			final int o = v*out.wordsPerLine;
+
+			for (int i=rowStart[v]; i < rowStart[v + 1]; i++) {
+				final int k0 = start[i] >>> 6, k1 = end[i] >>> 6;
+				final long first = -1L >>> (start[i] & 63), last = Long.MIN_VALUE >> (end[i] & 63);
+
+				if (k0 == k1) {
+					out.data[o + k0] |= first & last;
+				} else {
+					out.data[o + k0] |= first;
+					Arrays.fill(out.data, o + k0 + 1, o + k1, -1L);
+					out.data[o + k1] |= last;
+				}
+			}
+		});
+		return out;
+	}
+
+	/**
+	 * Decodes this image into a binary image
+	 * @param palette palette of the binary image
+	 * @param foreground pixel value of foreground pixels (0 or 1)
+	 * @return new binary image
+	 */
+	public ImageData toImageData(PaletteData palette, int foreground) {
+		return toPacked().toImageData(palette, foreground);
+	}
+
+	/**
+	 * @return number of runs
+	 */
+	public int runCount() {
+		return rowStart[height];
+	}
+
+	/**
+	 * Returns pixel (u,v) by a binary search in the runs of line v
+	 * @param u
+	 * @param v
+	 * @return true if (u,v) is a foreground pixel
+	 */
+	public boolean get(int u, int v) {
+		int lo = rowStart[v], hi = rowStart[v + 1] - 1;
+
+		while (lo <= hi) {
+			final int m = (lo + hi) >>> 1;
+
+			if (end[m] < u) lo = m + 1;
+			else if (start[m] > u) hi = m - 1;
+			else return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param other image of the same size
+	 * @return new image: this AND other
+	 */
+	public RunLengthBinaryImage and(RunLengthBinaryImage other) {
+		return combine(other, AND);
+	}
+
+	/**
+	 * @param other image of the same size
+	 * @return new image: this OR other
+	 */
+	public RunLengthBinaryImage or(RunLengthBinaryImage other) {
+		return combine(other, OR);
+	}
+
+	/**
+	 * @param other image of the same size
+	 * @return new image: this XOR other
+	 */
+	public RunLengthBinaryImage xor(RunLengthBinaryImage other) {
+		return combine(other, XOR);
+	}
+
+	/**
+	 * @param other image of the same size
+	 * @return new image: this AND NOT other
+	 */
+	public RunLengthBinaryImage andNot(RunLengthBinaryImage other) {
+		return combine(other, AND_NOT);
+	}
+
+	/**
+	 * @return new image: NOT this, i.e. the gaps between the runs
+	 */
+	public RunLengthBinaryImage not() {
+		return build(width, height, (v, out) -> {
+			int u = 0;
+
+			for (int i=rowStart[v]; i < rowStart[v + 1]; i++) {
+				if (start[i] > u) out.add(u, start[i] - 1);
+				u = end[i] + 1;
+			}
+			if (u < width) out.add(u, width - 1);
+		});
+	}
+
+	/**
+	 * Merges the run boundaries of both images line by line and emits a run boundary whenever the
+	 * result of the truth table changes
+	 * @param other image of the same size
+	 * @param table truth table, bit 2*a + b is the result of a op b, 0 op 0 must be 0
+	 * @return new image
+	 */
+	private RunLengthBinaryImage combine(RunLengthBinaryImage other, int table) {
+		assert width == other.width && height == other.height : "different image sizes";
+
+		return build(width, height, (v, out) -> {
+			final int aEnd = rowStart[v + 1], bEnd = other.rowStart[v + 1];
+			int i = rowStart[v], j = other.rowStart[v];
+			int a = 0, b = 0, result = 0, s = 0;
+
+			while (i < aEnd || j < bEnd) {
+				final int xa = (i < aEnd) ? ((a == 0) ? start[i] : end[i] + 1) : Integer.MAX_VALUE;
+				final int xb = (j < bEnd) ? ((b == 0) ? other.start[j] : other.end[j] + 1) : Integer.MAX_VALUE;
+				final int x = Math.min(xa, xb);
+
+				if (xa == x) {
+					i += a;
+					a ^= 1;
+				}
+				if (xb == x) {
+					j += b;
+					b ^= 1;
+				}
+
+				final int r = (table >>> (2*a + b)) & 1;
+				if (r != result) {
+					if (r == 1) s = x;
+					else out.add(s, x - 1);
+					result = r;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Dilation with a horizontal line, which is the same as widening each run
+	 * @param left number of pixels added to the left of each run
+	 * @param right number of pixels added to the right of each run
+	 * @return new dilated image, pixels outside the image are background
+	 */
+	public RunLengthBinaryImage dilateHorizontal(int left, int right) {
+		return dilate(new int[] { 0 }, new int[] { -right }, new int[] { left });
+	}
+
+	/**
+	 * Dilation with a structuring element, which is decomposed into horizontal segments, e.g. a disc into one segment per line.
+	 * The result is the same as with BinaryMorphology.dilation.
+	 * @param struct all true elements belong to the structure
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 * @return new dilated image, pixels outside the image are background
+	 */
+	public RunLengthBinaryImage dilate(boolean[][] struct, int cx, int cy) {
+		int n = 0;
+		for (boolean[] row : struct) {
+			for (int i=0; i < row.length; i++) if (row[i] && (i == 0 || !row[i - 1])) n++;
+		}
+
+		final int[] dy = new int[n], dxFrom = new int[n], dxTo = new int[n];
+		n = 0;
+		for (int j=0; j < struct.length; j++) {
+			for (int i=0; i < struct[j].length; i++) {
+				if (struct[j][i]) {
+					final int i0 = i;
+					while (i + 1 < struct[j].length && struct[j][i + 1]) i++;
+					dy[n] = j - cy;
+					dxFrom[n] = i0 - cx;
+					dxTo[n++] = i - cx;
+				}
+			}
+		}
+		return dilate(dy, dxFrom, dxTo);
+	}
+
+	/**
+	 * Dilation with a structuring element given as horizontal segments relative to the hotspot.
+	 * Like in BinaryMorphology, output pixel (u,v) is foreground if any input pixel (u + dx, v + dy[k]) with
+	 * dxFrom[k] <= dx <= dxTo[k] is foreground. Hence each input run [s, e] of line v + dy[k] contributes the run
+	 * [s - dxTo[k], e - dxFrom[k]] to line v. The contributions of a line are sorted and merged: O(r log r) for r runs.
+	 * @param dy vertical offsets of the segments
+	 * @param dxFrom first horizontal offset of each segment
+	 * @param dxTo last horizontal offset of each segment
+	 * @return new dilated image, pixels outside the image are background
+	 */
+	public RunLengthBinaryImage dilate(int[] dy, int[] dxFrom, int[] dxTo) {
+		assert dy.length == dxFrom.length && dy.length == dxTo.length : "wrong segment arrays";
+
+		return build(width, height, (v, out) -> {
+			int n = 0;
+			for (int k=0; k < dy.length; k++) {
+				final int v0 = v + dy[k];
+				if (v0 >= 0 && v0 < height) n += rowStart[v0 + 1] - rowStart[v0];
+			}
+			if (n == 0) return;
+
+			// contributions as (start << 32 | end), sorted by start
+			final long[] runs = new long[n];
+			n = 0;
+			for (int k=0; k < dy.length; k++) {
+				final int v0 = v + dy[k];
+				if (v0 < 0 || v0 >= height) continue;
+
+				for (int i=rowStart[v0]; i < rowStart[v0 + 1]; i++) {
+					final int s = Math.max(0, start[i] - dxTo[k]), e = Math.min(width - 1, end[i] - dxFrom[k]);
+					if (s <= e) runs[n++] = ((long)s << 32) | e;
+				}
+			}
+			Arrays.sort(runs, 0, n);
+
+			// merge overlapping and touching runs
+			int s = -1, e = -2;
+			for (int i=0; i < n; i++) {
+				final int rs = (int)(runs[i] >>> 32), re = (int)runs[i];
+
+				if (rs > e + 1) {
+					if (s >= 0) out.add(s, e);
+					s = rs;
+					e = re;
+				} else if (re > e) {
+					e = re;
+				}
+			}
+			if (s >= 0) out.add(s, e);
+		});
+	}
+
+	/**
+	 * Labels the foreground components with union-find on the runs. The labels are numbered in raster order
+	 * of the first pixel of each component, like in ConnectedComponentLabeling.
+	 * @param runLabels output: label 1..n of each run, at least runCount() entries
+	 * @param eightConnected true: 8-neighborhood, false: 4-neighborhood
+	 * @return number of components n
+	 */
+	public int label(int[] runLabels, boolean eightConnected) {
+		final int nRuns = runCount();
+		final int[] parent = new int[nRuns];
+		final int d = (eightConnected) ? 1 : 0;
+
+		for (int r=0; r < nRuns; r++) parent[r] = r;
+
+		// unite overlapping runs of adjacent lines
+		for (int v=1; v < height; v++) {
+			int i = rowStart[v - 1], j = rowStart[v];
+			final int iEnd = rowStart[v], jEnd = rowStart[v + 1];
+
+			while (i < iEnd && j < jEnd) {
+				if (start[i] <= end[j] + d && start[j] <= end[i] + d) union(parent, i, j);
+				if (end[i] < end[j]) i++; else j++;
+			}
+		}
+
+		// the root of a component is its first run in raster order
+		int n = 0;
+		for (int r=0; r < nRuns; r++) {
+			final int root = find(parent, r);
+			runLabels[r] = (root == r) ? ++n : runLabels[root];
+		}
+		return n;
+	}
+
+	/**
+	 * Labels the foreground components and paints the labels
+	 * @param labels output: 0 = background, 1..n = components in raster order of their first pixel
+	 * @param eightConnected true: 8-neighborhood, false: 4-neighborhood
+	 * @return number of components n
+	 */
+	public int label(IntImage labels, boolean eightConnected) {
+		assert width == labels.width && height == labels.height : "different image sizes";
+
+		final int[] runLabels = new int[runCount()];
+		final int n = label(runLabels, eightConnected);
+
+		Parallel.For(0, height, v -> {
+			final int o = v*width;
+
+			Arrays.fill(labels.data, o, o + width, 0);
+			for (int i=rowStart[v]; i < rowStart[v + 1]; i++) Arrays.fill(labels.data, o + start[i], o + end[i] + 1, runLabels[i]);
+		});
+		return n;
+	}
+
+	/**
+	 * @return number of foreground pixels
+	 */
+	public long area() {
+		long area = 0;
+		for (int i=0; i < runCount(); i++) area += end[i] - start[i] + 1;
+		return area;
+	}
+
+	/**
+	 * @return centroid { x, y } of the foreground pixels, NaN if there aren't any
+	 */
+	public double[] centroid() {
+		long area = 0, sumX = 0, sumY = 0;
+
+		for (int v=0; v < height; v++) {
+			for (int i=rowStart[v]; i < rowStart[v + 1]; i++) {
+				final long len = end[i] - start[i] + 1;
+
+				area += len;
+				sumX += (start[i] + (long)end[i])*len/2;
+				sumY += v*len;
+			}
+		}
+		return new double[] { (double)sumX/area, (double)sumY/area };
+	}
+
+	/**
+	 * Areas of labeled components
+	 * @param runLabels label 1..n of each run, see label
+	 * @param n number of components
+	 * @return number of pixels of each component, index label - 1
+	 */
+	public long[] areas(int[] runLabels, int n) {
+		final long[] areas = new long[n];
+		for (int i=0; i < runCount(); i++) areas[runLabels[i] - 1] += end[i] - start[i] + 1;
+		return areas;
+	}
+
+	/**
+	 * Centroids of labeled components
+	 * @param runLabels label 1..n of each run, see label
+	 * @param n number of components
+	 * @return { xs, ys } of each component, index label - 1
+	 */
+	public double[][] centroids(int[] runLabels, int n) {
+		final long[] area = new long[n], sumX = new long[n], sumY = new long[n];
+
+		for (int v=0; v < height; v++) {
+			for (int i=rowStart[v]; i < rowStart[v + 1]; i++) {
+				final int c = runLabels[i] - 1;
+				final long len = end[i] - start[i] + 1;
+
+				area[c] += len;
+				sumX[c] += (start[i] + (long)end[i])*len/2;
+				sumY[c] += v*len;
+			}
+		}
+
+		final double[] xs = new double[n], ys = new double[n];
+		for (int c=0; c < n; c++) {
+			xs[c] = (double)sumX[c]/area[c];
+			ys[c] = (double)sumY[c]/area[c];
+		}
+		return new double[][] { xs, ys };
+	}
+
+	/**
+	 * Returns the root of run r and halves the path
+	 */
+	private static int find(int[] parent, int r) {
+		while (parent[r] != r) {
+			parent[r] = parent[parent[r]];
+			r = parent[r];
+		}
+		return r;
+	}
+
+	/**
+	 * Unites the components of runs a and b: the smaller root becomes the root of both
+	 */
+	private static void union(int[] parent, int a, int b) {
+		final int ra = find(parent, a), rb = find(parent, b);
+
+		if (ra < rb) parent[rb] = ra;
+		else if (rb < ra) parent[ra] = rb;
+	}
+
+	/**
+	 * Returns the position of the next foreground (background) pixel at or after u, or the image width
+	 */
+	private static int nextPixel(PackedBinaryImage in, int base, int u, boolean foreground) {
+		if (u >= in.width) return in.width;
+
+		int k = u >>> 6;
+		long word = (foreground) ? in.data[base + k] : ~in.data[base + k];
+
+		word &= -1L >>> (u & 63);
+		while (word == 0) {
+			if (++k == in.wordsPerLine) return in.width;
+			word = (foreground) ? in.data[base + k] : ~in.data[base + k];
+		}
+		return Math.min(in.width, (k << 6) + Long.numberOfLeadingZeros(word));
+	}
+
+	/**
+	 * Producer of the runs of one line
+	 */
+	private interface LineEncoder {
+		/**
+		 * Adds the runs of line v in ascending order to out
+		 */
+		void encode(int v, Runs out);
+	}
+
+	/**
+	 * Encodes all lines in parallel strips and concatenates the runs of the strips
+	 */
+	private static RunLengthBinaryImage build(int width, int height, LineEncoder encoder) {
+		final int nStrips = Parallel.stripCount(height);
+		final Runs[] strips = new Runs[nStrips];
+		final int[] rowStart = new int[height + 1];
+
+		Parallel.forStrips(height, (s, top, bottom) -> {
+			final Runs runs = new Runs();
+
+			for (int v=top; v < bottom; v++) {
+				rowStart[v] = runs.n;
+				encoder.encode(v, runs);
+			}
+			strips[s] = runs;
+		});
+
+		// global run indices
+		int nRuns = 0;
+		final int[] offset = new int[nStrips];
+		for (int s=0; s < nStrips; s++) {
+			offset[s] = nRuns;
+			nRuns += strips[s].n;
+		}
+		final int[] start = new int[nRuns], end = new int[nRuns];
+
+		Parallel.forStrips(height, (s, top, bottom) -> {
+			for (int v=top; v < bottom; v++) rowStart[v] += offset[s];
+			System.arraycopy(strips[s].start, 0, start, offset[s], strips[s].n);
+			System.arraycopy(strips[s].end, 0, end, offset[s], strips[s].n);
+		});
+		rowStart[height] = nRuns;
+		return new RunLengthBinaryImage(width, height, rowStart, start, end);
+	}
+
+	/**
+	 * Growing run list of a strip
+	 */
+	private static class Runs {
+		int[] start = new int[64], end = new int[64];
+		int n;
+
+		void add(int s, int e) {
+			if (n == start.length) {
+				start = Arrays.copyOf(start, 2*n);
+				end = Arrays.copyOf(end, 2*n);
+			}
+			start[n] = s;
+			end[n] = e;
+			n++;
+		}
+	}
+}
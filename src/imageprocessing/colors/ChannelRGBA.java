@@ -1,11 +1,13 @@
 package imageprocessing.colors;
 
-import org.eclipse.swt.SWT;
+import java.util.Arrays;
+
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.RGB;
 
 import imageprocessing.IImageProcessor;
 import imageprocessing.ImageProcessing;
+import imageprocessing.buffer.ByteImage;
 import main.Picsi;
 import utils.Parallel;
 
@@ -34,19 +36,46 @@ public class ChannelRGBA implements IImageProcessor {
 
 	public static ImageData getChannel(ImageData inData, int channel) {
 		ImageData outData = ImageProcessing.createImage(inData.width, inData.height, Picsi.IMAGE_TYPE_GRAY);
+		final ByteImage out = ByteImage.wrap(outData);
+		final ByteImage in = ByteImage.wrapChannel(inData, channel);
 
-		// parallel image loop
-		Parallel.For(0, inData.height, v -> {
-			for (int u=0; u < inData.width; u++) {
-				RGB rgb = inData.palette.getRGB(inData.getPixel(u,v));
-				switch(channel) {
-				case 0: outData.setPixel(u, v, rgb.red); break;
-				case 1: outData.setPixel(u, v, rgb.green); break;
-				case 2: outData.setPixel(u, v, rgb.blue); break;
-				case 3: outData.setPixel(u, v, (inData.getTransparencyType() == SWT.TRANSPARENCY_ALPHA) ? inData.getAlpha(u, v) : 255); // 0 = fully transparent, 255 = opaque 						
+		if (in != null) {
+			// channel is stored in separate bytes
+			Parallel.For(0, inData.height, v -> {
+				int i = in.index(0, v);
+				int o = out.index(0, v);
+				
+				for (int u=0; u < inData.width; u++, i += in.pixelStride) out.data[o++] = in.data[i];
+			});
+		} else if (channel == 3) {
+			// no alpha channel: 255 = opaque
+			Arrays.fill(outData.data, (byte)255);
+		} else if (!inData.palette.isDirect && inData.depth == 8) {
+			// indexed color image: look up the channel in the palette
+			final RGB[] rgbs = inData.getRGBs();
+			final byte[] lut = new byte[256];
+			for (int i=0; i < rgbs.length; i++) lut[i] = (byte)((channel == 0) ? rgbs[i].red : (channel == 1) ? rgbs[i].green : rgbs[i].blue);
+			final ByteImage index = ByteImage.wrap(inData);
+			
+			Parallel.For(0, inData.height, v -> {
+				int i = index.index(0, v);
+				int o = out.index(0, v);
+				
+				for (int u=0; u < inData.width; u++) out.data[o++] = lut[index.data[i++] & 0xFF];
+			});
+		} else {
+			// parallel image loop
+			Parallel.For(0, inData.height, v -> {
+				for (int u=0; u < inData.width; u++) {
+					RGB rgb = inData.palette.getRGB(inData.getPixel(u,v));
+					switch(channel) {
+					case 0: out.set(u, v, rgb.red); break;
+					case 1: out.set(u, v, rgb.green); break;
+					case 2: out.set(u, v, rgb.blue); break;
+					}
 				}
-			}
-		});
+			});
+		}
 		return outData;		
 	}
 }
@@ -456,7 +456,7 @@ public class ColorSpaces {
 	}
 
 	public static ImageData labWheel() {
-		// TODO zwischen magenta und blau die Abstnde von H bernehmen
+		// TODO zwischen magenta und blau die Abstände von H übernehmen
 		ImageData outData = ImageProcessing.createImage(ImageSize, ImageSize, Picsi.IMAGE_TYPE_RGB);
 		
 		final int center = ImageSize/2;
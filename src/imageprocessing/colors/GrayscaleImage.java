@@ -2,6 +2,7 @@ package imageprocessing.colors;
 
 import imageprocessing.IImageProcessor;
 import imageprocessing.ImageProcessing;
+import imageprocessing.buffer.ByteImage;
 import main.Picsi;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.RGB;
@@ -21,17 +22,58 @@ public class GrayscaleImage implements IImageProcessor {
 
     public static ImageData grayscale(ImageData image) {
         ImageData outData = ImageProcessing.createImage(image.width, image.height, Picsi.IMAGE_TYPE_GRAY);
+        final ByteImage out = ByteImage.wrap(outData);
+        final ByteImage r = ByteImage.wrapChannel(image, 0);
+        final ByteImage g = ByteImage.wrapChannel(image, 1);
+        final ByteImage b = ByteImage.wrapChannel(image, 2);
 
-        int wR = 3, wG = 6, wB = 1;
+        if (r != null && g != null && b != null) {
+            // direct color image with one byte per channel
+            final int ps = r.pixelStride;
 
-        Parallel.For(0, image.height, v -> {
-            for (int u=0; u < image.width; u++) {
-                RGB rgb = image.palette.getRGB(image.getPixel(u,v));
-                int value = (wR * rgb.red + wG * rgb.green + wB * rgb.blue) / 10;
-                outData.setPixel(u, v, value);
-            }
-        });
+            Parallel.For(0, image.height, v -> {
+                int ir = r.index(0, v), ig = g.index(0, v), ib = b.index(0, v);
+                int o = out.index(0, v);
+
+                for (int u=0; u < image.width; u++, ir += ps, ig += ps, ib += ps) {
+                    out.data[o++] = (byte)luminance(r.data[ir] & 0xFF, g.data[ig] & 0xFF, b.data[ib] & 0xFF);
+                }
+            });
+        } else if (!image.palette.isDirect && image.depth == 8) {
+            // indexed color image: convert the palette once
+            final RGB[] rgbs = image.getRGBs();
+            final byte[] lut = new byte[256];
+            for (int i=0; i < rgbs.length; i++) lut[i] = (byte)luminance(rgbs[i].red, rgbs[i].green, rgbs[i].blue);
+            final ByteImage in = ByteImage.wrap(image);
+
+            Parallel.For(0, image.height, v -> {
+                int i = in.index(0, v);
+                int o = out.index(0, v);
+
+                for (int u=0; u < image.width; u++) out.data[o++] = lut[in.data[i++] & 0xFF];
+            });
+        } else {
+            Parallel.For(0, image.height, v -> {
+                for (int u=0; u < image.width; u++) {
+                    RGB rgb = image.palette.getRGB(image.getPixel(u,v));
+                    out.set(u, v, luminance(rgb.red, rgb.green, rgb.blue));
+                }
+            });
+        }
 
         return outData;
     }
+
+    /**
+     * Weighted luminance used by grayscale
+     * @param red
+     * @param green
+     * @param blue
+     * @return gray value in range [0, 255]
+     */
+    public static int luminance(int red, int green, int blue) {
+        final int wR = 3, wG = 6, wB = 1;
+
+        return (wR * red + wG * green + wB * blue) / 10;
+    }
 }
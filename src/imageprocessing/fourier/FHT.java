@@ -3,7 +3,8 @@ package imageprocessing.fourier;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.PaletteData;
 
-import imageprocessing.ImageProcessing;
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.buffer.FloatImage;
 import utils.Complex;
 
 /**
@@ -41,17 +42,11 @@ public class FHT extends FHT1D implements Cloneable {
 			l >>= 1;
 			m_maxN <<= 1;
 		}
-		m_pixels = new float[m_maxN*m_maxN];
 		
-		int iPos = 0, oPos = 0;
-		for (int v = 0; v < inData.height; v++) {
-			for (int u = 0; u < inData.width; u++) {
-				//pixels[oPos++] = inData.data[iPos++]/(float)norm; // signed values
-				m_pixels[oPos++] = (0xFF & inData.data[iPos++])/(float)norm; // unsigned values
-			}
-			iPos += inData.bytesPerLine - inData.width;
-			oPos += m_maxN - inData.width;
-		}
+		// unsigned values in the upper left corner of the zero-padded square plane
+		final FloatImage plane = new FloatImage(m_maxN, m_maxN);
+		plane.copy(ByteImage.wrap(inData), norm);
+		m_pixels = plane.data;
 	}
 
 	/**
@@ -160,16 +155,8 @@ public class FHT extends FHT1D implements Cloneable {
 	public ImageData getImage() {
 		ImageData outData = new ImageData(m_width, m_height, m_depth, m_palette);
 		
-		int iPos = 0, oPos = 0;
-		for(int v = 0; v < outData.height; v++) {
-			for(int u = 0; u < outData.width; u++) {
-				outData.data[oPos++] = (byte)ImageProcessing.clamp8(m_pixels[iPos++]);	// unsigned values
-				//outData.data[oPos++] = (byte)ImageProcessing.signedClamp8(pixels[iPos++]);	// signed values				
-			}
-			iPos += m_maxN - outData.width;
-			oPos += outData.bytesPerLine - outData.width;
-		}
-		
+		// unsigned values
+		new FloatImage(m_pixels, m_maxN, m_maxN).copyTo(ByteImage.wrap(outData));
 		return outData;
 	}
 	
@@ -0,0 +1,136 @@
+package imageprocessing.morphology;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+import imageprocessing.buffer.ByteImage;
+import utils.Parallel;
+
+/**
+ * Grayscale erosion (minimum filter) and dilation (maximum filter) of 8-bit planes.
+ * Pixels outside the image are neutral: they don't contribute to the minimum or maximum.
+ * Rectangles use the van Herk/Gil-Werman algorithm, decomposable elements run the chain of their factors,
+ * and all other elements are applied as full mask by a row kernel: the plane is widened to int rows with
+ * neutral borders once, and each output row accumulates min/max of whole shifted input rows.
+ * These branch-free loops over contiguous int arrays are vectorized by the JIT compiler (SIMD min/max),
+ * hence no explicit vector code is needed.
+ */
+public class GrayMorphology {
+	/**
+	 * Erosion (minimum filter)
+	 * @param in input plane
+	 * @param out output plane of the same size, must not be the input plane
+	 * @param se structuring element
+	 */
+	public static void erosion(ByteImage in, ByteImage out, StructuringElement se) {
+		apply(in, out, se, true);
+	}
+
+	/**
+	 * Dilation (maximum filter)
+	 * @param in input plane
+	 * @param out output plane of the same size, must not be the input plane
+	 * @param se structuring element
+	 */
+	public static void dilation(ByteImage in, ByteImage out, StructuringElement se) {
+		apply(in, out, se, false);
+	}
+
+	private static void apply(ByteImage in, ByteImage out, StructuringElement se, boolean min) {
+		final int neutral = (min) ? 255 : 0;
+		final Rectangle r = se.rectangle();
+
+		if (r != null) {
+			if (min) RectMorphology.erosion(in, out, r, neutral);
+			else RectMorphology.dilation(in, out, r, neutral);
+		} else if (!se.decomposition().isEmpty()) {
+			// the chain runs on a padded plane, because intermediate results outside the image influence the image
+			int border = 0;
+			for (StructuringElement f : se.decomposition()) border += f.extent();
+
+			ByteImage a = new ByteImage(in.width + 2*border, in.height + 2*border);
+			ByteImage b = new ByteImage(a.width, a.height);
+			Arrays.fill(a.data, (byte)neutral);
+			copy(in, 0, 0, a, border, border, in.width, in.height);
+
+			for (StructuringElement f : se.decomposition()) {
+				apply(a, b, f, min);
+				ByteImage t = a; a = b; b = t;
+			}
+			copy(a, border, border, out, 0, 0, in.width, in.height);
+		} else {
+			mask(in, out, se, min);
+		}
+	}
+
+	/**
+	 * Full mask: out(u,v) = min/max of in(u + dx, v + dy) for all elements (dx,dy) of the structure
+	 */
+	private static void mask(ByteImage in, ByteImage out, StructuringElement se, boolean min) {
+		final boolean[][] struct = se.mask();
+		final int neutral = (min) ? 255 : 0;
+		final int w = in.width;
+		int n = 0, px = 0, py = 0;
+
+		for (int j=0; j < struct.length; j++) {
+			for (int i=0; i < struct[j].length; i++) {
+				if (struct[j][i]) {
+					px = Math.max(px, Math.abs(i - se.cx()));
+					py = Math.max(py, Math.abs(j - se.cy()));
+					n++;
+				}
+			}
+		}
+
+		// offsets of the structure elements in the padded plane
+		final int pw = w + 2*px;
+		final int[] offsets = new int[n];
+		n = 0;
+		for (int j=0; j < struct.length; j++) {
+			for (int i=0; i < struct[j].length; i++) {
+				if (struct[j][i]) offsets[n++] = (j - se.cy())*pw + i - se.cx();
+			}
+		}
+
+		// padded int plane with neutral border
+		final int ppx = px, ppy = py;
+		final int[] p = new int[pw*(in.height + 2*py)];
+		Arrays.fill(p, neutral);
+		Parallel.For(0, in.height, v -> {
+			for (int u=0, i=in.index(0, v), o=(v + ppy)*pw + ppx; u < w; u++, i += in.pixelStride) p[o + u] = in.data[i] & 0xFF;
+		});
+
+		Parallel.For(0, in.height,
+			// creator: row accumulator of a chunk of rows
+			() -> new int[w],
+			// loop body
+			(v, acc) -> {
+				final int center = (v + ppy)*pw + ppx;
+
+				Arrays.fill(acc, neutral);
+				for (int off : offsets) {
+					final int s = center + off;
+
+					if (min) {
+						for (int u=0; u < w; u++) acc[u] = Math.min(acc[u], p[s + u]);
+					} else {
+						for (int u=0; u < w; u++) acc[u] = Math.max(acc[u], p[s + u]);
+					}
+				}
+				for (int u=0, o=out.index(0, v); u < w; u++, o += out.pixelStride) out.data[o] = (byte)acc[u];
+			}
+		);
+	}
+
+	/**
+	 * Copies a rectangle of w x h pixels line by line: the pixels of a line are contiguous
+	 */
+	private static void copy(ByteImage src, int su, int sv, ByteImage dst, int du, int dv, int w, int h) {
+		assert src.pixelStride == dst.pixelStride : "different pixel strides";
+
+		Parallel.For(0, h, v -> {
+			System.arraycopy(src.data, src.index(su, sv + v), dst.data, dst.index(du, dv + v), w*src.pixelStride);
+		});
+	}
+}
@@ -0,0 +1,277 @@
+package imageprocessing.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+import imageprocessing.buffer.PackedBinaryImage;
+import utils.Parallel;
+
+/**
+ * Sequence of binary erosions and dilations executed in a single fused pass.
+ * Each structuring element is expanded into elementary mask operations: rectangles become a shift and 
+ * log(width) + log(height) two-point masks (a line of length 2l is the sum of a line of length l and {0, l}), 
+ * decomposed elements are expanded into their factors, and all other elements stay full masks.
+ * The image is processed in horizontal tiles. Each tile is loaded once with enough halo rows and columns for 
+ * all operations, then all operations alternate between two tile buffers, and only the final rows are written
+ * to the output image. Hence, an n-times opening allocates the output image and two tile buffers per thread 
+ * instead of 2n intermediate images.
+ * Pixels outside the image are background after each erosion or dilation, as for single operations.
+ */
+public class MorphologyPipeline {
+	private static class Step {
+		final int[] m_dx, m_dy;		// mask elements relative to the hotspot
+		final boolean m_erosion;
+		final boolean m_clip;		// last operation of a structuring element: pixels outside the image become background
+		final int m_up, m_down, m_left, m_right; // extents
+		
+		Step(int[] dx, int[] dy, boolean erosion, boolean clip) {
+			int up = 0, down = 0, left = 0, right = 0;
+			for (int i=0; i < dx.length; i++) {
+				up = Math.max(up, -dy[i]); down = Math.max(down, dy[i]);
+				left = Math.max(left, -dx[i]); right = Math.max(right, dx[i]);
+			}
+			m_dx = dx; m_dy = dy;
+			m_erosion = erosion;
+			m_clip = clip;
+			m_up = up; m_down = down; m_left = left; m_right = right;
+		}
+		
+		Step clipped() {
+			return new Step(m_dx, m_dy, m_erosion, true);
+		}
+	}
+	
+	private static final int STORE_RESULT = 0;
+	private static final int STORE_INPUT_MINUS_RESULT = 1;
+	private static final int STORE_RESULT_MINUS_INPUT = 2;
+	
+	private final List<Step> m_steps = new ArrayList<>();
+	
+	/**
+	 * Appends an erosion
+	 * @param se structuring element
+	 * @return this pipeline
+	 */
+	public MorphologyPipeline erosion(StructuringElement se) {
+		add(se, true);
+		return this;
+	}
+	
+	/**
+	 * Appends a dilation
+	 * @param se structuring element
+	 * @return this pipeline
+	 */
+	public MorphologyPipeline dilation(StructuringElement se) {
+		add(se, false);
+		return this;
+	}
+	
+	/**
+	 * Creates an opening pipeline: multiplicity erosions followed by multiplicity dilations
+	 * @param se structuring element
+	 * @param multiplicity
+	 * @return pipeline
+	 */
+	public static MorphologyPipeline opening(StructuringElement se, int multiplicity) {
+		MorphologyPipeline p = new MorphologyPipeline();
+		for (int i=0; i < multiplicity; i++) p.erosion(se);
+		for (int i=0; i < multiplicity; i++) p.dilation(se);
+		return p;
+	}
+	
+	/**
+	 * Creates a closing pipeline: multiplicity dilations followed by multiplicity erosions
+	 * @param se structuring element
+	 * @param multiplicity
+	 * @return pipeline
+	 */
+	public static MorphologyPipeline closing(StructuringElement se, int multiplicity) {
+		MorphologyPipeline p = new MorphologyPipeline();
+		for (int i=0; i < multiplicity; i++) p.dilation(se);
+		for (int i=0; i < multiplicity; i++) p.erosion(se);
+		return p;
+	}
+	
+	private void add(StructuringElement se, boolean erosion) {
+		final int first = m_steps.size();
+		
+		expand(se, erosion);
+		if (m_steps.size() == first) {
+			// empty structure
+			m_steps.add(new Step(new int[0], new int[0], erosion, true));
+		} else {
+			m_steps.set(m_steps.size() - 1, m_steps.get(m_steps.size() - 1).clipped());
+		}
+	}
+	
+	private void expand(StructuringElement se, boolean erosion) {
+		final Rectangle r = se.rectangle();
+		
+		if (r != null) {
+			// shift to the top left corner, then grow lines by doubling
+			m_steps.add(new Step(new int[] { r.x }, new int[] { r.y }, erosion, false));
+			for (int len = 1; len < r.width; ) {
+				final int d = Math.min(len, r.width - len);
+				m_steps.add(new Step(new int[] { 0, d }, new int[] { 0, 0 }, erosion, false));
+				len += d;
+			}
+			for (int len = 1; len < r.height; ) {
+				final int d = Math.min(len, r.height - len);
+				m_steps.add(new Step(new int[] { 0, 0 }, new int[] { 0, d }, erosion, false));
+				len += d;
+			}
+		} else if (!se.decomposition().isEmpty()) {
+			for (StructuringElement f : se.decomposition()) expand(f, erosion);
+		} else {
+			final boolean[][] struct = se.mask();
+			int n = 0;
+			for (boolean[] row : struct) {
+				for (boolean b : row) if (b) n++;
+			}
+			if (n == 0) return;
+			
+			final int[] dx = new int[n], dy = new int[n];
+			n = 0;
+			for (int j=0; j < struct.length; j++) {
+				for (int i=0; i < struct[j].length; i++) {
+					if (struct[j][i]) {
+						dx[n] = i - se.cx();
+						dy[n++] = j - se.cy();
+					}
+				}
+			}
+			m_steps.add(new Step(dx, dy, erosion, false));
+		}
+	}
+	
+	/**
+	 * Runs the pipeline
+	 * @param in input image
+	 * @return new output image
+	 */
+	public PackedBinaryImage run(PackedBinaryImage in) {
+		PackedBinaryImage out = new PackedBinaryImage(in.width, in.height);
+		run(in, out);
+		return out;
+	}
+	
+	/**
+	 * Runs the pipeline
+	 * @param in input image
+	 * @param out output image of the same size, must not be the input image
+	 */
+	public void run(PackedBinaryImage in, PackedBinaryImage out) {
+		run(in, out, STORE_RESULT);
+	}
+	
+	/**
+	 * Runs the pipeline and stores the set difference of its result and the input image,
+	 * e.g. the inner contour (input minus erosion) or the outer contour (dilation minus input).
+	 * The result of the pipeline is never materialized as an image.
+	 * @param in input image
+	 * @param out output image of the same size, must not be the input image
+	 * @param inputMinusResult true: input minus result, false: result minus input
+	 */
+	public void runDifference(PackedBinaryImage in, PackedBinaryImage out, boolean inputMinusResult) {
+		run(in, out, (inputMinusResult) ? STORE_INPUT_MINUS_RESULT : STORE_RESULT_MINUS_INPUT);
+	}
+	
+	private void run(PackedBinaryImage in, PackedBinaryImage out, int store) {
+		assert in != out : "in-place operation isn't supported";
+		assert in.width == out.width && in.height == out.height : "different image sizes";
+		if (in.height == 0 || in.width == 0) return;
+		
+		final int m = m_steps.size();
+		final Step[] steps = m_steps.toArray(new Step[m]);
+		
+		// remaining extents after each step
+		final int[] upAfter = new int[m], downAfter = new int[m];
+		int up = 0, down = 0, left = 0, right = 0;
+		for (int i=m - 1; i >= 0; i--) {
+			upAfter[i] = up; downAfter[i] = down;
+			up += steps[i].m_up; down += steps[i].m_down;
+			left += steps[i].m_left; right += steps[i].m_right;
+		}
+		final int totalUp = up, totalDown = down;
+		
+		// tile geometry: image column 0 starts at word padWords
+		final int padWords = (left + 63) >>> 6;
+		final int nb = padWords + ((in.width + right + 63) >>> 6);
+		final int nWords = in.wordsPerLine;
+		final long lastMask = in.lastWordMask();
+		final int tile = Math.max(16, Math.min(4*(up + down), (in.height + Parallel.getParallelism() - 1)/Parallel.getParallelism()));
+		final int nTiles = (in.height + tile - 1)/tile;
+		final int bufRows = tile + up + down;
+		
+		Parallel.For(0, nTiles, 
+			// creator: two tile buffers per chunk of tiles
+			() -> new long[][] { new long[bufRows*nb], new long[bufRows*nb] },
+			// loop body
+			(t, buf) -> {
+				final int v0 = t*tile, v1 = Math.min(v0 + tile, in.height);
+				final int top = v0 - totalUp; // image row of buffer row 0
+				long[] a = buf[0], b = buf[1];
+				
+				// load rows [v0 - up, v1 + down)
+				for (int v = top; v < v1 + totalDown; v++) {
+					final int o = (v - top)*nb;
+					Arrays.fill(a, o, o + nb, 0);
+					if (v >= 0 && v < in.height) System.arraycopy(in.data, v*nWords, a, o + padWords, nWords);
+				}
+				
+				for (int i=0; i < m; i++) {
+					final Step s = steps[i];
+					final int[] dx = s.m_dx, dy = s.m_dy;
+					
+					for (int v = v0 - upAfter[i]; v < v1 + downAfter[i]; v++) {
+						final int o = (v - top)*nb;
+						
+						if (s.m_clip && (v < 0 || v >= in.height)) {
+							Arrays.fill(b, o, o + nb, 0);
+							continue;
+						}
+						for (int k=0; k < nb; k++) b[o + k] = (s.m_erosion) ? -1L : 0;
+						for (int e=0; e < dx.length; e++) {
+							final int src = (v + dy[e] - top)*nb;
+							final int d = dx[e];
+							
+							if (s.m_erosion) {
+								for (int k=0; k < nb; k++) b[o + k] &= PackedBinaryImage.shiftedWord(a, src, nb, k, d);
+							} else {
+								for (int k=0; k < nb; k++) b[o + k] |= PackedBinaryImage.shiftedWord(a, src, nb, k, d);
+							}
+						}
+						if (s.m_clip) {
+							for (int k=0; k < padWords; k++) b[o + k] = 0;
+							b[o + padWords + nWords - 1] &= lastMask;
+							for (int k=padWords + nWords; k < nb; k++) b[o + k] = 0;
+						}
+					}
+					long[] tmp = a; a = b; b = tmp;
+				}
+				
+				// store rows [v0, v1)
+				for (int v = v0; v < v1; v++) {
+					final int o = (v - top)*nb + padWords;
+					final int d = v*nWords;
+					
+					switch(store) {
+					case STORE_RESULT:
+						System.arraycopy(a, o, out.data, d, nWords);
+						break;
+					case STORE_INPUT_MINUS_RESULT:
+						for (int k=0; k < nWords; k++) out.data[d + k] = in.data[d + k] & ~a[o + k];
+						break;
+					case STORE_RESULT_MINUS_INPUT:
+						for (int k=0; k < nWords; k++) out.data[d + k] = a[o + k] & ~in.data[d + k];
+						break;
+					}
+				}
+			}
+		);
+	}
+}
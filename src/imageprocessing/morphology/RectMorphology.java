@@ -0,0 +1,260 @@
+package imageprocessing.morphology;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+import imageprocessing.buffer.ByteImage;
+import imageprocessing.buffer.PackedBinaryImage;
+import utils.Parallel;
+
+/**
+ * Erosion and dilation with rectangular structure elements (including horizontal and vertical lines).
+ * A rectangle is separable into a horizontal and a vertical line. Each line is processed with the 
+ * van Herk/Gil-Werman algorithm: the line is split into blocks of the structure length k, and running 
+ * minima/maxima are accumulated forwards (g) and backwards (h) within each block. 
+ * Then each window is min/max(h[s], g[s + k - 1]), hence the costs per pixel don't depend on k.
+ * Packed binary images use word-parallel shifts in horizontal direction (log k word operations per 64 pixels)
+ * and the van Herk/Gil-Werman algorithm on whole rows of words in vertical direction.
+ */
+public class RectMorphology {
+	/**
+	 * Detects structure elements whose true elements form a filled rectangle
+	 * @param struct all true elements belong to the structure
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 * @return rectangle relative to the hotspot or null if the structure isn't a non-empty filled rectangle
+	 */
+	public static Rectangle detect(boolean[][] struct, int cx, int cy) {
+		int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = -1, y1 = -1, n = 0;
+		
+		for (int j=0; j < struct.length; j++) {
+			for (int i=0; i < struct[j].length; i++) {
+				if (struct[j][i]) {
+					x0 = Math.min(x0, i); x1 = Math.max(x1, i);
+					y0 = Math.min(y0, j); y1 = Math.max(y1, j);
+					n++;
+				}
+			}
+		}
+		if (n == 0 || n != (x1 - x0 + 1)*(y1 - y0 + 1)) return null;
+		return new Rectangle(x0 - cx, y0 - cy, x1 - x0 + 1, y1 - y0 + 1);
+	}
+	
+	/**
+	 * Erosion (minimum filter) of an 8-bit plane
+	 * @param in input plane
+	 * @param out output plane of the same size, can be the input plane
+	 * @param r rectangle relative to the hotspot
+	 * @param border value of pixels outside the image
+	 */
+	public static void erosion(ByteImage in, ByteImage out, Rectangle r, int border) {
+		ByteImage tmp = new ByteImage(in.width, in.height);
+		horizontal(in, tmp, r.x, r.width, (byte)border, true);
+		vertical(tmp, out, r.y, r.height, (byte)border, true);
+	}
+	
+	/**
+	 * Dilation (maximum filter) of an 8-bit plane
+	 * @param in input plane
+	 * @param out output plane of the same size, can be the input plane
+	 * @param r rectangle relative to the hotspot
+	 * @param border value of pixels outside the image
+	 */
+	public static void dilation(ByteImage in, ByteImage out, Rectangle r, int border) {
+		ByteImage tmp = new ByteImage(in.width, in.height);
+		horizontal(in, tmp, r.x, r.width, (byte)border, false);
+		vertical(tmp, out, r.y, r.height, (byte)border, false);
+	}
+	
+	/**
+	 * Erosion of a packed binary image. Pixels outside the image are background.
+	 * @param in input image
+	 * @param out output image of the same size, can be the input image
+	 * @param r rectangle relative to the hotspot
+	 */
+	public static void erosion(PackedBinaryImage in, PackedBinaryImage out, Rectangle r) {
+		PackedBinaryImage tmp = new PackedBinaryImage(in.width, in.height);
+		horizontal(in, tmp, r.x, r.width, true);
+		vertical(tmp, out, r.y, r.height, true);
+	}
+	
+	/**
+	 * Dilation of a packed binary image. Pixels outside the image are background.
+	 * @param in input image
+	 * @param out output image of the same size, can be the input image
+	 * @param r rectangle relative to the hotspot
+	 */
+	public static void dilation(PackedBinaryImage in, PackedBinaryImage out, Rectangle r) {
+		PackedBinaryImage tmp = new PackedBinaryImage(in.width, in.height);
+		horizontal(in, tmp, r.x, r.width, false);
+		vertical(tmp, out, r.y, r.height, false);
+	}
+	
+	/**
+	 * Number of padded line elements: the padded line covers [min(0, a), max(len - 1, len + a + k - 2)]
+	 * and its length is a multiple of k
+	 */
+	private static int paddedLength(int len, int a, int k) {
+		final int n = Math.max(len - 1, len + a + k - 2) - Math.min(0, a) + 1;
+		return (n + k - 1)/k*k;
+	}
+	
+	private static byte op(byte x, byte y, boolean min) {
+		return (((x & 0xFF) < (y & 0xFF)) == min) ? x : y;
+	}
+
+	/**
+	 * Horizontal van Herk/Gil-Werman pass: out(u,v) = min/max of in(u + a .. u + a + k - 1, v)
+	 */
+	private static void horizontal(ByteImage in, ByteImage out, int a, int k, byte border, boolean min) {
+		final int w = in.width;
+		final int off = -Math.min(0, a);
+		final int n = paddedLength(w, a, k);
+		
+		Parallel.For(0, in.height,
+			// creator: line buffers of a chunk of lines
+			() -> new byte[3][n],
+			// loop body
+			(v, buf) -> {
+				final byte[] p = buf[0], g = buf[1], h = buf[2];
+				
+				Arrays.fill(p, border);
+				for (int u=0, i=in.index(0, v); u < w; u++, i += in.pixelStride) p[off + u] = in.data[i];
+				
+				for (int t=0; t < n; t++) g[t] = (t%k == 0) ? p[t] : op(g[t - 1], p[t], min);
+				for (int t=n - 1; t >= 0; t--) h[t] = (t%k == k - 1) ? p[t] : op(h[t + 1], p[t], min);
+				
+				for (int u=0, o=out.index(0, v); u < w; u++, o += out.pixelStride) {
+					final int s = u + a + off;
+					out.data[o] = op(h[s], g[s + k - 1], min);
+				}
+			}
+		);
+	}
+	
+	/**
+	 * Vertical van Herk/Gil-Werman pass on whole rows: out(u,v) = min/max of in(u, v + a .. v + a + k - 1)
+	 */
+	private static void vertical(ByteImage in, ByteImage out, int a, int k, byte border, boolean min) {
+		final int w = in.width, height = in.height;
+		final int off = -Math.min(0, a);
+		final int n = paddedLength(height, a, k);
+		final byte[] g = new byte[n*w]; // forward accumulated rows
+		final byte[] h = new byte[n*w]; // backward accumulated rows
+		
+		// forward and backward accumulation within each block of k rows
+		Parallel.For(0, n/k, b -> {
+			final int t0 = b*k;
+			final byte[] row = new byte[w];
+			
+			for (int t=t0; t < t0 + k; t++) {
+				loadRow(in, t - off, row, border);
+				if (t == t0) System.arraycopy(row, 0, g, t*w, w);
+				else for (int u=0; u < w; u++) g[t*w + u] = op(g[(t - 1)*w + u], row[u], min);
+			}
+			for (int t=t0 + k - 1; t >= t0; t--) {
+				loadRow(in, t - off, row, border);
+				if (t == t0 + k - 1) System.arraycopy(row, 0, h, t*w, w);
+				else for (int u=0; u < w; u++) h[t*w + u] = op(h[(t + 1)*w + u], row[u], min);
+			}
+		});
+		
+		Parallel.For(0, height, v -> {
+			final int s = v + a + off;
+			final int hs = s*w, gs = (s + k - 1)*w;
+			
+			for (int u=0, o=out.index(0, v); u < w; u++, o += out.pixelStride) out.data[o] = op(h[hs + u], g[gs + u], min);
+		});
+	}
+	
+	private static void loadRow(ByteImage in, int v, byte[] row, byte border) {
+		if (v < 0 || v >= in.height) {
+			Arrays.fill(row, border);
+		} else {
+			for (int u=0, i=in.index(0, v); u < in.width; u++, i += in.pixelStride) row[u] = in.data[i];
+		}
+	}
+
+	/**
+	 * Horizontal pass on packed lines: out(u,v) = AND/OR of in(u + a .. u + a + k - 1, v).
+	 * The window is built by doubling: after each step acc(u) combines twice as many consecutive pixels.
+	 * The line buffer is k pixels longer than the line, because windows may end outside the image.
+	 */
+	private static void horizontal(PackedBinaryImage in, PackedBinaryImage out, int a, int k, boolean erosion) {
+		final int nWords = in.wordsPerLine;
+		final int nb = (in.width + k + 63) >>> 6;
+		final long lastMask = in.lastWordMask();
+		
+		Parallel.For(0, in.height,
+			// creator: line buffers of a chunk of lines
+			() -> new long[2][nb],
+			// loop body
+			(v, buf) -> {
+				long[] acc = buf[0], tmp = buf[1];
+				int len = 1;
+				
+				// acc(u) = in(u + a)
+				for (int i=0; i < nb; i++) acc[i] = in.shiftedWord(v*nWords, i, a);
+				while (len < k) {
+					final int d = Math.min(len, k - len);
+					
+					for (int i=0; i < nb; i++) {
+						final long s = PackedBinaryImage.shiftedWord(acc, 0, nb, i, d);
+						tmp[i] = (erosion) ? acc[i] & s : acc[i] | s;
+					}
+					long[] t = acc; acc = tmp; tmp = t;
+					len += d;
+				}
+				
+				System.arraycopy(acc, 0, out.data, v*nWords, nWords);
+				out.data[(v + 1)*nWords - 1] &= lastMask;
+			}
+		);
+	}
+	
+	/**
+	 * Vertical van Herk/Gil-Werman pass on whole packed rows: out(u,v) = AND/OR of in(u, v + a .. v + a + k - 1)
+	 */
+	private static void vertical(PackedBinaryImage in, PackedBinaryImage out, int a, int k, boolean erosion) {
+		final int nWords = in.wordsPerLine, height = in.height;
+		final int off = -Math.min(0, a);
+		final int n = paddedLength(height, a, k);
+		final long[] g = new long[n*nWords]; // forward accumulated rows
+		final long[] h = new long[n*nWords]; // backward accumulated rows
+		
+		// forward and backward accumulation within each block of k rows; rows outside the image are background
+		Parallel.For(0, n/k, b -> {
+			final int t0 = b*k;
+			
+			for (int t=t0; t < t0 + k; t++) {
+				final int v = t - off;
+				final int o = t*nWords, p = (t - 1)*nWords, i = v*nWords;
+				final boolean inside = v >= 0 && v < height;
+				
+				for (int j=0; j < nWords; j++) {
+					final long w = (inside) ? in.data[i + j] : 0;
+					g[o + j] = (t == t0) ? w : (erosion) ? g[p + j] & w : g[p + j] | w;
+				}
+			}
+			for (int t=t0 + k - 1; t >= t0; t--) {
+				final int v = t - off;
+				final int o = t*nWords, p = (t + 1)*nWords, i = v*nWords;
+				final boolean inside = v >= 0 && v < height;
+				
+				for (int j=0; j < nWords; j++) {
+					final long w = (inside) ? in.data[i + j] : 0;
+					h[o + j] = (t == t0 + k - 1) ? w : (erosion) ? h[p + j] & w : h[p + j] | w;
+				}
+			}
+		});
+		
+		Parallel.For(0, height, v -> {
+			final int s = v + a + off;
+			final int hs = s*nWords, gs = (s + k - 1)*nWords;
+			final int o = v*nWords;
+			
+			for (int j=0; j < nWords; j++) out.data[o + j] = (erosion) ? h[hs + j] & g[gs + j] : h[hs + j] | g[gs + j];
+		});
+	}
+}
@@ -0,0 +1,236 @@
+package imageprocessing.morphology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+import imageprocessing.binary.BinaryMorphology;
+import imageprocessing.buffer.PackedBinaryImage;
+
+/**
+ * Structuring element with hotspot and optional decomposition.
+ * If an element is the Minkowski sum of smaller factors, then an erosion (dilation) with the element equals 
+ * the chain of erosions (dilations) with its factors. Erosion and dilation choose the cheapest available way:
+ * rectangles use the van Herk/Gil-Werman algorithm, decomposable elements run the chain of their factors,
+ * all other elements are applied as full mask.
+ * - diamond of radius r = r-fold sum of the 3x3 cross
+ * - circle of radius r ~ square of side 2a + 1 plus diamond of radius r - a, where a = round(r*(sqrt(2) - 1)),
+ *   i.e. an octagon (exactly s_circle5 for r = 2 and s_circle7 for r = 3)
+ */
+public class StructuringElement {
+	private static final StructuringElement s_cross = new StructuringElement(new boolean[][] {{ false, true, false},{true, true, true},{false, true, false}}, 1, 1, null);
+	
+	private final boolean[][] m_struct;
+	private final int m_cx, m_cy;			// hotspot
+	private final Rectangle m_rect;			// rectangle relative to the hotspot or null
+	private final List<StructuringElement> m_factors; // empty if there isn't a decomposition
+	
+	private StructuringElement(boolean[][] struct, int cx, int cy, List<StructuringElement> factors) {
+		m_struct = struct;
+		m_cx = cx;
+		m_cy = cy;
+		m_rect = RectMorphology.detect(struct, cx, cy);
+		m_factors = (factors == null) ? Collections.emptyList() : Collections.unmodifiableList(factors);
+	}
+	
+	/**
+	 * Creates a structuring element from a mask. Diamonds and circles with centered hotspot are recognized 
+	 * and get their decomposition.
+	 * @param struct all true elements belong to the structure
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 * @return structuring element
+	 */
+	public static StructuringElement of(boolean[][] struct, int cx, int cy) {
+		if (struct.length > 3 && struct.length % 2 == 1 && cx == struct.length/2 && cy == cx) {
+			final int r = cx;
+			StructuringElement se = diamond(r);
+			if (se.sameMask(struct)) return se;
+			se = circle(r);
+			if (se.sameMask(struct)) return se;
+		}
+		return new StructuringElement(struct, cx, cy, null);
+	}
+	
+	/**
+	 * Square with centered hotspot
+	 * @param size side length
+	 * @return structuring element
+	 */
+	public static StructuringElement square(int size) {
+		assert size > 0 : "wrong size: " + size;
+		return rectangle(size, size, (size - 1)/2, (size - 1)/2);
+	}
+	
+	/**
+	 * Filled rectangle, e.g. a horizontal (height = 1) or vertical (width = 1) line
+	 * @param width
+	 * @param height
+	 * @param cx origin of the structure (hotspot)
+	 * @param cy origin of the structure (hotspot)
+	 * @return structuring element
+	 */
+	public static StructuringElement rectangle(int width, int height, int cx, int cy) {
+		boolean[][] struct = new boolean[height][width];
+		for (boolean[] row : struct) Arrays.fill(row, true);
+		return new StructuringElement(struct, cx, cy, null);
+	}
+	
+	/**
+	 * Diamond (|x| + |y| <= r) with centered hotspot
+	 * @param r radius
+	 * @return structuring element decomposed into r 3x3 crosses
+	 */
+	public static StructuringElement diamond(int r) {
+		assert r >= 0 : "wrong radius: " + r;
+		if (r == 0) return square(1);
+		if (r == 1) return s_cross;
+		return sum(Collections.nCopies(r, s_cross));
+	}
+	
+	/**
+	 * Octagonal approximation of a circle with centered hotspot
+	 * @param r radius
+	 * @return structuring element decomposed into a square and a diamond
+	 */
+	public static StructuringElement circle(int r) {
+		assert r >= 0 : "wrong radius: " + r;
+		final int a = (int)Math.round(r*(Math.sqrt(2) - 1));
+		
+		if (a == 0) return diamond(r);
+		if (a == r) return square(2*r + 1);
+		
+		List<StructuringElement> factors = new ArrayList<>();
+		factors.add(square(2*a + 1));
+		factors.addAll(Collections.nCopies(r - a, s_cross));
+		return sum(factors);
+	}
+	
+	/**
+	 * Creates the Minkowski sum of the factors
+	 * @param factors
+	 * @return structuring element with the given decomposition
+	 */
+	private static StructuringElement sum(List<StructuringElement> factors) {
+		boolean[][] struct = {{ true }};
+		int cx = 0, cy = 0;
+		
+		for (StructuringElement f : factors) {
+			final boolean[][] s = new boolean[struct.length + f.m_struct.length - 1][struct[0].length + f.width() - 1];
+			
+			for (int j=0; j < struct.length; j++) {
+				for (int i=0; i < struct[j].length; i++) {
+					if (!struct[j][i]) continue;
+					for (int l=0; l < f.m_struct.length; l++) {
+						for (int k=0; k < f.m_struct[l].length; k++) {
+							if (f.m_struct[l][k]) s[j + l][i + k] = true;
+						}
+					}
+				}
+			}
+			struct = s;
+			cx += f.m_cx;
+			cy += f.m_cy;
+		}
+		return new StructuringElement(struct, cx, cy, new ArrayList<>(factors));
+	}
+	
+	public boolean[][] mask() { return m_struct; }
+	public int cx() { return m_cx; }
+	public int cy() { return m_cy; }
+	
+	/**
+	 * Returns the rectangle formed by the structure
+	 * @return rectangle relative to the hotspot or null if the structure isn't a filled rectangle
+	 */
+	public Rectangle rectangle() {
+		return m_rect;
+	}
+	
+	/**
+	 * Returns the factors whose Minkowski sum is this element
+	 * @return factors or an empty list
+	 */
+	public List<StructuringElement> decomposition() {
+		return m_factors;
+	}
+	
+	/**
+	 * Returns the largest distance between the hotspot and an element of the structure
+	 * @return extent
+	 */
+	public int extent() {
+		int e = 0;
+		
+		for (int j=0; j < m_struct.length; j++) {
+			for (int i=0; i < m_struct[j].length; i++) {
+				if (m_struct[j][i]) e = Math.max(e, Math.max(Math.abs(j - m_cy), Math.abs(i - m_cx)));
+			}
+		}
+		return e;
+	}
+	
+	/**
+	 * Erosion of a packed binary image. Pixels outside the image are background.
+	 * @param in input image
+	 * @param out output image of the same size, must not be the input image
+	 */
+	public void erosion(PackedBinaryImage in, PackedBinaryImage out) {
+		apply(in, out, true);
+	}
+	
+	/**
+	 * Dilation of a packed binary image. Pixels outside the image are background.
+	 * @param in input image
+	 * @param out output image of the same size, must not be the input image
+	 */
+	public void dilation(PackedBinaryImage in, PackedBinaryImage out) {
+		apply(in, out, false);
+	}
+	
+	private void apply(PackedBinaryImage in, PackedBinaryImage out, boolean erosion) {
+		if (m_rect != null) {
+			if (erosion) RectMorphology.erosion(in, out, m_rect);
+			else RectMorphology.dilation(in, out, m_rect);
+		} else if (!m_factors.isEmpty()) {
+			// the chain runs on a padded image, because intermediate dilation results may grow beyond the image border
+			int border = 0;
+			for (StructuringElement f : m_factors) border += f.extent();
+
+			PackedBinaryImage a = in.padded(border);
+			PackedBinaryImage b = new PackedBinaryImage(a.width, a.height);
+			
+			for (StructuringElement f : m_factors) {
+				f.apply(a, b, erosion);
+				PackedBinaryImage t = a; a = b; b = t;
+			}
+			a.crop(border, border, out);
+		} else if (erosion) {
+			BinaryMorphology.erosion(in, out, m_struct, m_cx, m_cy);
+		} else {
+			BinaryMorphology.dilation(in, out, m_struct, m_cx, m_cy);
+		}
+	}
+	
+	private int width() {
+		int w = 0;
+		for (boolean[] row : m_struct) w = Math.max(w, row.length);
+		return w;
+	}
+	
+	private boolean sameMask(boolean[][] struct) {
+		if (struct.length != m_struct.length) return false;
+		
+		for (int j=0; j < struct.length; j++) {
+			for (int i=0; i < Math.max(struct[j].length, m_struct[j].length); i++) {
+				final boolean a = i < struct[j].length && struct[j][i];
+				final boolean b = i < m_struct[j].length && m_struct[j][i];
+				if (a != b) return false;
+			}
+		}
+		return true;
+	}
+}
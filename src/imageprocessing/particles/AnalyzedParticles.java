@@ -0,0 +1,98 @@
+package imageprocessing.particles;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import imageprocessing.buffer.LabelImage;
+
+/**
+ * Result of a particle analysis for interactive queries: label map, particle table and
+ * a spatial index over the bounding boxes, which is built once after the analysis.
+ */
+public class AnalyzedParticles {
+	public final LabelImage labels;
+	public final ParticleTable table;
+	public final int firstLabel;		// label of particle 0
+	public final ParticleIndex index;
+
+	/**
+	 * @param labels label map
+	 * @param table measured particles with bounding boxes
+	 * @param firstLabel label of particle 0
+	 */
+	public AnalyzedParticles(LabelImage labels, ParticleTable table, int firstLabel) {
+		this.labels = labels;
+		this.table = table;
+		this.firstLabel = firstLabel;
+		this.index = ParticleIndex.build(table);
+	}
+
+	/**
+	 * Finds the particle under a pixel: the particle containing the pixel, otherwise the particle
+	 * with the smallest bounding box around the pixel (e.g. the pixel lies in a hole)
+	 * @param x
+	 * @param y
+	 * @return particle index or -1
+	 */
+	public int particleAt(int x, int y) {
+		if (x < 0 || x >= labels.width || y < 0 || y >= labels.height) return -1;
+
+		final int hit = labels.get(x, y) - firstLabel;
+		final double[] left = table.column("left"), top = table.column("top"), right = table.column("right"), bottom = table.column("bottom");
+		final int[] best = { -1 };
+		final double[] bestArea = { Double.MAX_VALUE };
+
+		index.query(x, y, i -> {
+			final double area = (right[i] - left[i] + 1)*(bottom[i] - top[i] + 1);
+
+			if (i == hit) {
+				best[0] = i;
+				bestArea[0] = -1;
+			} else if (area < bestArea[0]) {
+				best[0] = i;
+				bestArea[0] = area;
+			}
+		});
+		return best[0];
+	}
+
+	/**
+	 * Selects the particles whose bounding box lies inside a rectangle
+	 * @param left
+	 * @param top
+	 * @param right inclusive
+	 * @param bottom inclusive
+	 * @param filter additional condition on the particle index, e.g. on area or circularity, or null
+	 * @return particle indices in ascending order
+	 */
+	public int[] select(int left, int top, int right, int bottom, IntPredicate filter) {
+		final double[] l = table.column("left"), t = table.column("top"), r = table.column("right"), b = table.column("bottom");
+		final int[][] result = { new int[16] };
+		final int[] n = { 0 };
+
+		index.query(left, top, right, bottom, i -> {
+			if (l[i] >= left && t[i] >= top && r[i] <= right && b[i] <= bottom && (filter == null || filter.test(i))) {
+				if (n[0] == result[0].length) result[0] = Arrays.copyOf(result[0], 2*n[0]);
+				result[0][n[0]++] = i;
+			}
+		});
+
+		final int[] selection = Arrays.copyOf(result[0], n[0]);
+		Arrays.sort(selection);
+		return selection;
+	}
+
+	/**
+	 * Describes a particle for the status bar
+	 * @param i particle index
+	 * @return short description
+	 */
+	public String describe(int i) {
+		final StringBuilder sb = new StringBuilder("particle ").append(table.labels[i]);
+		final double[] area = table.column("area"), circularity = table.column("circularity");
+
+		if (area != null) sb.append(String.format(", area %.0f", area[i]));
+		if (circularity != null) sb.append(String.format(", circularity %.3f", circularity[i]));
+		return sb.toString();
+	}
+}
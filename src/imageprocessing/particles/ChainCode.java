@@ -0,0 +1,160 @@
+package imageprocessing.particles;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.graphics.ImageData;
+
+import imageprocessing.buffer.LabelImage;
+
+/**
+ * Closed contour of a labeled region as Freeman chain code.
+ * Directions: 0 = east, 1 = north-east, 2 = north, ... 7 = south-east (counter-clockwise on screen).
+ * The contour is traced with Moore-neighbor tracing in O(contour length): standing on a contour pixel,
+ * the neighbors are scanned clockwise, starting after the last examined background pixel (backtrack).
+ * Tracing stops when the start pixel is left a second time in the same direction (Jacob's criterion).
+ * Regions with 4-connectivity are traced along their 4-neighbors, because a diagonal step between two
+ * background pixels would cut off background connected through that gap. Afterwards, each concave corner
+ * of two 4-steps is replaced by one diagonal step.
+ * An outer contour starts at the first pixel of the region in raster order, an inner contour (hole) starts
+ * at the region pixel above the first pixel of the hole.
+ */
+public class ChainCode {
+	private static final int[] s_dx = { 1, 1, 0, -1, -1, -1, 0, 1 };
+	private static final int[] s_dy = { 0, -1, -1, -1, 0, 1, 1, 1 };
+
+	public final int startX, startY;
+	public final boolean outer;			// true: outer contour, false: inner contour (hole)
+	private final byte[] m_codes;
+
+	private ChainCode(int startX, int startY, boolean outer, byte[] codes) {
+		this.startX = startX;
+		this.startY = startY;
+		this.outer = outer;
+		m_codes = codes;
+	}
+
+	/**
+	 * Traces a contour of the region containing the start pixel
+	 * @param labels label map
+	 * @param startX x coordinate of the start pixel
+	 * @param startY y coordinate of the start pixel
+	 * @param outer true: outer contour, the start pixel is the first pixel of the region in raster order,
+	 * false: inner contour, the pixel below the start pixel is the first pixel of a hole in raster order
+	 * @param eightConnected connectivity of the region: true: 8-neighborhood, false: 4-neighborhood
+	 * @return chain code
+	 */
+	public static ChainCode trace(LabelImage labels, int startX, int startY, boolean outer, boolean eightConnected) {
+		final int label = labels.get(startX, startY);
+		byte[] codes = new byte[64];
+		int n = 0;
+		int x = startX, y = startY;
+		int backtrack = (outer) ? 4 : 6; // west of the first pixel or the hole below
+		final int step = (eightConnected) ? 1 : 2;
+		int first = -1;
+
+		while (true) {
+			final int d = next(labels, x, y, backtrack, step, label);
+
+			if (d < 0) break; // isolated pixel
+			if (x == startX && y == startY && d == first) break;
+			if (first < 0) first = d;
+
+			if (n == codes.length) codes = Arrays.copyOf(codes, 2*n);
+			codes[n++] = (byte)d;
+			x += s_dx[d];
+			y += s_dy[d];
+
+			// the last examined background pixel seen from the new contour pixel, 
+			// or the previous contour pixel with 4-connectivity: the left neighbor is scanned first
+			backtrack = (eightConnected) ? (d + 2 + (d & 1)) & 7 : (d + 4) & 7;
+		}
+		if (!eightConnected) {
+			// concave corners: step a followed by step a + 2 (left turn) becomes the diagonal step a + 1
+			int m = 0;
+			for (int i=0; i < n; i++) {
+				if (i + 1 < n && codes[i + 1] == ((codes[i] + 2) & 7)) codes[m++] = (byte)(codes[i++] + 1);
+				else codes[m++] = codes[i];
+			}
+			n = m;
+		}
+		return new ChainCode(startX, startY, outer, Arrays.copyOf(codes, n));
+	}
+
+	/**
+	 * Scans the neighbors of (x,y) clockwise, starting after the backtrack direction
+	 * @param step 1: 8-neighborhood, 2: 4-neighborhood
+	 * @return direction of the first neighbor with the given label or -1
+	 */
+	private static int next(LabelImage labels, int x, int y, int backtrack, int step, int label) {
+		for (int i=step; i <= 8; i += step) {
+			final int d = (backtrack - i) & 7;
+			final int u = x + s_dx[d], v = y + s_dy[d];
+
+			if (u >= 0 && u < labels.width && v >= 0 && v < labels.height && labels.get(u, v) == label) return d;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return number of chain code elements
+	 */
+	public int length() {
+		return m_codes.length;
+	}
+
+	/**
+	 * @param i index
+	 * @return direction of element i
+	 */
+	public int code(int i) {
+		return m_codes[i];
+	}
+
+	/**
+	 * Corrected perimeter length (Vossepoel and Smeulders): 0.980 n_even + 1.406 n_odd - 0.091 n_corners.
+	 * Counting odd codes with sqrt(2) alone overestimates the length of straight lines in most directions.
+	 * @return perimeter length in pixels
+	 */
+	public double perimeter() {
+		final int n = m_codes.length;
+		int odd = 0, corners = 0;
+
+		for (int i=0; i < n; i++) {
+			odd += m_codes[i] & 1;
+			if (m_codes[i] != m_codes[(i + 1) % n]) corners++;
+		}
+		return 0.980*(n - odd) + 1.406*odd - 0.091*corners;
+	}
+
+	/**
+	 * Returns the contour pixels as closed polyline
+	 * @return { x coordinates, y coordinates } of length() + 1 points, the last point is the start point
+	 */
+	public int[][] polyline() {
+		final int n = m_codes.length;
+		final int[] xs = new int[n + 1], ys = new int[n + 1];
+
+		xs[0] = startX; ys[0] = startY;
+		for (int i=0; i < n; i++) {
+			xs[i + 1] = xs[i] + s_dx[m_codes[i]];
+			ys[i + 1] = ys[i] + s_dy[m_codes[i]];
+		}
+		return new int[][] { xs, ys };
+	}
+
+	/**
+	 * Draws the contour pixels
+	 * @param image image to draw into
+	 * @param color pixel value
+	 */
+	public void draw(ImageData image, int color) {
+		int x = startX, y = startY;
+
+		image.setPixel(x, y, color);
+		for (byte d : m_codes) {
+			x += s_dx[d];
+			y += s_dy[d];
+			image.setPixel(x, y, color);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package imageprocessing.particles;
+
+import java.util.Arrays;
+
+/**
+ * Convex hull of integer points and its area and diameter.
+ * A hull is stored as { x coordinates, y coordinates } of its vertices, starting with the topmost (leftmost)
+ * vertex and running clockwise in image coordinates (y pointing down).
+ */
+public class ConvexHull {
+	/**
+	 * Andrew's monotone chain on points sorted by y and then by x. The first chain runs from the top
+	 * along the right side to the bottom, the second chain back along the left side.
+	 * Collinear points are removed. Integer cross products make all orientation tests exact.
+	 * @param xs x coordinates of the points, sorted by y and then by x
+	 * @param ys y coordinates of the points
+	 * @param n number of points
+	 * @return hull vertices { xs, ys }
+	 */
+	public static int[][] monotoneChain(int[] xs, int[] ys, int n) {
+		if (n <= 1) return new int[][] { Arrays.copyOf(xs, n), Arrays.copyOf(ys, n) };
+
+		final int[] hull = new int[2*n]; // indices of the hull points
+		int k = 0;
+
+		for (int i=0; i < n; i++) {
+			while (k >= 2 && cross(xs, ys, hull[k - 2], hull[k - 1], i) <= 0) k--;
+			hull[k++] = i;
+		}
+		for (int i=n - 2, t=k + 1; i >= 0; i--) {
+			while (k >= t && cross(xs, ys, hull[k - 2], hull[k - 1], i) <= 0) k--;
+			hull[k++] = i;
+		}
+
+		// the last point is the first point
+		final int[] hx = new int[k - 1], hy = new int[k - 1];
+		for (int i=0; i < k - 1; i++) {
+			hx[i] = xs[hull[i]];
+			hy[i] = ys[hull[i]];
+		}
+		return new int[][] { hx, hy };
+	}
+
+	/**
+	 * Computes the cross product (b - a) x (c - a).
+	 * @return a positive value if a, b, c turn clockwise in image coordinates (y pointing down),
+	 * negative if counter-clockwise, zero if collinear
+	 */
+	private static long cross(int[] xs, int[] ys, int a, int b, int c) {
+		return (long)(xs[b] - xs[a])*(ys[c] - ys[a]) - (long)(ys[b] - ys[a])*(xs[c] - xs[a]);
+	}
+
+	/**
+	 * Area of the hull polygon (shoelace formula)
+	 * @param hull hull vertices { xs, ys }
+	 * @return area, 1 for hulls with less than three vertices
+	 */
+	public static double area(int[][] hull) {
+		final int[] xs = hull[0], ys = hull[1];
+		final int n = xs.length;
+
+		if (n < 3) return 1;
+
+		long area = 0;
+		for (int i=0; i < n; i++) {
+			final int j = (i + 1)%n;
+			area += (long)xs[i]*ys[j] - (long)xs[j]*ys[i];
+		}
+		return Math.abs(area)/2.0;
+	}
+
+	/**
+	 * Diameter of the hull: largest distance between two vertices (rotating calipers)
+	 * @param hull hull vertices { xs, ys }
+	 * @return diameter, 0 for hulls with less than two vertices
+	 */
+	public static double diameter(int[][] hull) {
+		final int[] xs = hull[0], ys = hull[1];
+		final int n = xs.length;
+
+		if (n < 2) return 0;
+
+		long max = 0;
+		int k = 1;
+		for (int i=0; i < n; i++) {
+			while (squaredDistance(xs, ys, i, (k + 1)%n) > squaredDistance(xs, ys, i, k)) k = (k + 1)%n;
+			max = Math.max(max, squaredDistance(xs, ys, i, k));
+		}
+		return Math.sqrt(max);
+	}
+
+	private static long squaredDistance(int[] xs, int[] ys, int a, int b) {
+		final long dx = xs[a] - xs[b], dy = ys[a] - ys[b];
+		return dx*dx + dy*dy;
+	}
+}
@@ -0,0 +1,27 @@
+package imageprocessing.particles;
+
+/**
+ * Computes one or more features of a particle. Implementations must be stateless,
+ * because compute is called concurrently for different particles.
+ */
+public interface FeatureCalculator {
+	/**
+	 * Adds the columns of this calculator to the table
+	 * @param table particle table
+	 */
+	void addColumns(ParticleTable table);
+
+	/**
+	 * Computes the features of a particle and stores them in the particle's row
+	 * @param particle particle
+	 * @param table particle table with the columns of this calculator
+	 */
+	void compute(Particle particle, ParticleTable table);
+
+	/**
+	 * @return true if the calculator uses the contours of the particles (requires the hole search)
+	 */
+	default boolean needsContours() {
+		return false;
+	}
+}
@@ -0,0 +1,129 @@
+package imageprocessing.particles;
+
+import java.util.List;
+
+/**
+ * Standard feature calculators
+ */
+public class Features {
+	/** Number of pixels: column "area" */
+	public static final FeatureCalculator AREA = new FeatureCalculator() {
+		@Override
+		public void addColumns(ParticleTable table) {
+			table.addColumn("area");
+		}
+
+		@Override
+		public void compute(Particle particle, ParticleTable table) {
+			table.column("area")[particle.index] = particle.moments().area();
+		}
+	};
+
+	/** Center of gravity: columns "centroidX", "centroidY" */
+	public static final FeatureCalculator CENTROID = new FeatureCalculator() {
+		@Override
+		public void addColumns(ParticleTable table) {
+			table.addColumn("centroidX");
+			table.addColumn("centroidY");
+		}
+
+		@Override
+		public void compute(Particle particle, ParticleTable table) {
+			final Moments moments = particle.moments();
+
+			table.column("centroidX")[particle.index] = moments.centroidX();
+			table.column("centroidY")[particle.index] = moments.centroidY();
+		}
+	};
+
+	/** Eccentricity of the ellipse with the same second-order moments: column "eccentricity" */
+	public static final FeatureCalculator ECCENTRICITY = new FeatureCalculator() {
+		@Override
+		public void addColumns(ParticleTable table) {
+			table.addColumn("eccentricity");
+		}
+
+		@Override
+		public void compute(Particle particle, ParticleTable table) {
+			table.column("eccentricity")[particle.index] = particle.moments().eccentricity();
+		}
+	};
+
+	/** Bounding box (inclusive): columns "left", "top", "right", "bottom" */
+	public static final FeatureCalculator BOUNDING_BOX = new FeatureCalculator() {
+		@Override
+		public void addColumns(ParticleTable table) {
+			table.addColumn("left");
+			table.addColumn("top");
+			table.addColumn("right");
+			table.addColumn("bottom");
+		}
+
+		@Override
+		public void compute(Particle particle, ParticleTable table) {
+			final Moments moments = particle.moments();
+
+			table.column("left")[particle.index] = moments.left();
+			table.column("top")[particle.index] = moments.top();
+			table.column("right")[particle.index] = moments.right();
+			table.column("bottom")[particle.index] = moments.bottom();
+		}
+	};
+
+	/**
+	 * Corrected length of the outer and inner contours and circularity 4*pi*area/perimeter^2:
+	 * columns "perimeter", "circularity" and the contours
+	 */
+	public static final FeatureCalculator PERIMETER = new FeatureCalculator() {
+		@Override
+		public void addColumns(ParticleTable table) {
+			table.addColumn("perimeter");
+			table.addColumn("circularity");
+			table.addContours();
+		}
+
+		@Override
+		public void compute(Particle particle, ParticleTable table) {
+			final ChainCode[] contours = particle.contours();
+			double perimeter = 0;
+
+			for (ChainCode contour : contours) perimeter += contour.perimeter();
+			table.column("perimeter")[particle.index] = perimeter;
+			table.column("circularity")[particle.index] = (perimeter == 0) ? 1 : 4*Math.PI*particle.moments().area()/(perimeter*perimeter);
+			table.setContours(particle.index, contours);
+		}
+
+		@Override
+		public boolean needsContours() {
+			return true;
+		}
+	};
+
+	/**
+	 * Convex hull, its area, density (area/hull area) and diameter:
+	 * columns "convexHullArea", "density", "diameter" and the hulls
+	 */
+	public static final FeatureCalculator CONVEX_HULL = new FeatureCalculator() {
+		@Override
+		public void addColumns(ParticleTable table) {
+			table.addColumn("convexHullArea");
+			table.addColumn("density");
+			table.addColumn("diameter");
+			table.addHulls();
+		}
+
+		@Override
+		public void compute(Particle particle, ParticleTable table) {
+			final int[][] hull = particle.convexHull();
+			final double area = ConvexHull.area(hull);
+
+			table.column("convexHullArea")[particle.index] = area;
+			table.column("density")[particle.index] = particle.moments().area()/area;
+			table.column("diameter")[particle.index] = ConvexHull.diameter(hull);
+			table.setHull(particle.index, hull);
+		}
+	};
+
+	/** All standard features */
+	public static final List<FeatureCalculator> ALL = List.of(AREA, CENTROID, ECCENTRICITY, BOUNDING_BOX, PERIMETER, CONVEX_HULL);
+}
@@ -0,0 +1,159 @@
+package imageprocessing.particles;
+
+/**
+ * Streaming moments of a pixel region: area, sums of coordinates, second-order sums and bounding box.
+ * Pixels are added one by one while a region is labeled, hence the memory is O(1) per region,
+ * independent of the region size.
+ * The second-order sums are accumulated relative to an origin inside the region (e.g. the first pixel).
+ * This keeps them small and avoids the cancellation of Sxx - Sx*Sx/n with absolute coordinates.
+ */
+public class Moments {
+	private final int m_x0, m_y0;		// origin of the second-order sums
+	private long m_n;					// number of pixels
+	private long m_sx, m_sy;			// sums of coordinates
+	private long m_sxx, m_syy, m_sxy;	// second-order sums relative to the origin
+	private long m_dx, m_dy;			// first-order sums relative to the origin
+	private int m_left = Integer.MAX_VALUE, m_right = Integer.MIN_VALUE;
+	private int m_top = Integer.MAX_VALUE, m_bottom = Integer.MIN_VALUE;
+
+	/**
+	 * Creates empty moments
+	 * @param x0 origin of the second-order sums, e.g. x-coordinate of the first pixel
+	 * @param y0 origin of the second-order sums, e.g. y-coordinate of the first pixel
+	 */
+	public Moments(int x0, int y0) {
+		m_x0 = x0;
+		m_y0 = y0;
+	}
+
+	/**
+	 * Adds a pixel
+	 * @param x
+	 * @param y
+	 */
+	public void add(int x, int y) {
+		final long dx = x - m_x0, dy = y - m_y0;
+
+		m_n++;
+		m_sx += x; m_sy += y;
+		m_dx += dx; m_dy += dy;
+		m_sxx += dx*dx; m_syy += dy*dy; m_sxy += dx*dy;
+		if (x < m_left) m_left = x;
+		if (x > m_right) m_right = x;
+		if (y < m_top) m_top = y;
+		if (y > m_bottom) m_bottom = y;
+	}
+
+	/**
+	 * Adds a horizontal run of pixels in closed form
+	 * @param left x-coordinate of the first pixel
+	 * @param right x-coordinate of the last pixel
+	 * @param y
+	 */
+	public void addRun(int left, int right, int y) {
+		final long k = right - left + 1;
+		final long a = left - m_x0, b = right - m_x0, dy = y - m_y0;
+		final long sdx = (a + b)*k/2;					// sum of dx over the run
+		final long sdxx = squareSum(b) - squareSum(a - 1);	// sum of dx^2 over the run
+
+		m_n += k;
+		m_sx += (long)(left + right)*k/2; m_sy += y*k;
+		m_dx += sdx; m_dy += dy*k;
+		m_sxx += sdxx; m_syy += dy*dy*k; m_sxy += dy*sdx;
+		if (left < m_left) m_left = left;
+		if (right > m_right) m_right = right;
+		if (y < m_top) m_top = y;
+		if (y > m_bottom) m_bottom = y;
+	}
+
+	/**
+	 * @return 1^2 + 2^2 + ... + m^2, extended to negative m such that squareSum(m) - squareSum(m - 1) = m^2
+	 */
+	private static long squareSum(long m) {
+		return m*(m + 1)*(2*m + 1)/6;
+	}
+
+	/**
+	 * Adds all pixels of other moments, e.g. of another part of the same region
+	 * @param other
+	 */
+	public void add(Moments other) {
+		// shift the second-order sums of other to this origin: d = d' + a
+		final long ax = other.m_x0 - m_x0, ay = other.m_y0 - m_y0;
+
+		m_sxx += other.m_sxx + 2*ax*other.m_dx + other.m_n*ax*ax;
+		m_syy += other.m_syy + 2*ay*other.m_dy + other.m_n*ay*ay;
+		m_sxy += other.m_sxy + ax*other.m_dy + ay*other.m_dx + other.m_n*ax*ay;
+		m_dx += other.m_dx + other.m_n*ax;
+		m_dy += other.m_dy + other.m_n*ay;
+		m_n += other.m_n;
+		m_sx += other.m_sx; m_sy += other.m_sy;
+		m_left = Math.min(m_left, other.m_left);
+		m_right = Math.max(m_right, other.m_right);
+		m_top = Math.min(m_top, other.m_top);
+		m_bottom = Math.max(m_bottom, other.m_bottom);
+	}
+
+	/**
+	 * @return number of pixels
+	 */
+	public long area() {
+		return m_n;
+	}
+
+	public double centroidX() {
+		return (double)m_sx/m_n;
+	}
+
+	public double centroidY() {
+		return (double)m_sy/m_n;
+	}
+
+	/**
+	 * Second-order central moment (variance) in x-direction, normalized by the area
+	 * @return mu20/mu00
+	 */
+	public double varianceX() {
+		final double mx = (double)m_dx/m_n;
+		return Math.max(0, (double)m_sxx/m_n - mx*mx);
+	}
+
+	/**
+	 * Second-order central moment (variance) in y-direction, normalized by the area
+	 * @return mu02/mu00
+	 */
+	public double varianceY() {
+		final double my = (double)m_dy/m_n;
+		return Math.max(0, (double)m_syy/m_n - my*my);
+	}
+
+	/**
+	 * Mixed second-order central moment (covariance), normalized by the area
+	 * @return mu11/mu00
+	 */
+	public double covariance() {
+		return (double)m_sxy/m_n - ((double)m_dx/m_n)*((double)m_dy/m_n);
+	}
+
+	/**
+	 * Eccentricity of the ellipse with the same second-order moments: sqrt(1 - minor^2/major^2).
+	 * @return eccentricity in [0, 1], 1 for single pixels and lines
+	 */
+	public double eccentricity() {
+		if (m_n == 1) return 1;
+
+		final double sxx = varianceX(), syy = varianceY(), sxy = covariance();
+		final double trace = sxx + syy;
+		final double det = sxx*syy - sxy*sxy;
+		final double sqrt = Math.sqrt(Math.max(0, trace*trace - 4*det));
+		final double major = (trace + sqrt)/2;
+		final double minor = (trace - sqrt)/2;
+
+		return Math.sqrt(Math.max(0, 1 - minor/major));
+	}
+
+	public int left() { return m_left; }
+	public int right() { return m_right; }
+	public int top() { return m_top; }
+	public int bottom() { return m_bottom; }
+}
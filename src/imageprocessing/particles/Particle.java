@@ -0,0 +1,106 @@
+package imageprocessing.particles;
+
+import imageprocessing.buffer.LabelImage;
+
+/**
+ * View of one labeled particle during the measurement: its foreground runs in raster order and
+ * lazily computed intermediate results (moments, contours, convex hull), which are shared by all
+ * feature calculators of the particle. A particle is only used by one thread.
+ */
+public class Particle {
+	public final int index;		// row in the particle table
+	public final int label;
+	private final LabelImage m_labels;
+	private final boolean m_eightConnected;	// connectivity of the labeling
+	private final int[] m_row, m_start, m_end;	// runs of all particles
+	private final int m_firstRun, m_lastRun;	// runs [firstRun, lastRun) of this particle
+	private final int[] m_holes;				// pixel indices of the first pixels of the holes, or null
+	private final int m_firstHole, m_lastHole;
+	private Moments m_moments;
+	private ChainCode[] m_contours;
+	private int[][] m_hull;
+
+	Particle(int index, int label, LabelImage labels, boolean eightConnected, int[] row, int[] start, int[] end, int firstRun, int lastRun,
+			int[] holes, int firstHole, int lastHole) {
+		this.index = index;
+		this.label = label;
+		m_labels = labels;
+		m_eightConnected = eightConnected;
+		m_row = row;
+		m_start = start;
+		m_end = end;
+		m_firstRun = firstRun;
+		m_lastRun = lastRun;
+		m_holes = holes;
+		m_firstHole = firstHole;
+		m_lastHole = lastHole;
+	}
+
+	/**
+	 * @return number of foreground runs
+	 */
+	public int runCount() {
+		return m_lastRun - m_firstRun;
+	}
+
+	public int runRow(int i) { return m_row[m_firstRun + i]; }
+	public int runStart(int i) { return m_start[m_firstRun + i]; }
+	public int runEnd(int i) { return m_end[m_firstRun + i]; }
+
+	/**
+	 * @return moments of all pixels, computed from the runs
+	 */
+	public Moments moments() {
+		if (m_moments == null) {
+			final Moments moments = new Moments(m_start[m_firstRun], m_row[m_firstRun]);
+
+			for (int r=m_firstRun; r < m_lastRun; r++) moments.addRun(m_start[r], m_end[r], m_row[r]);
+			m_moments = moments;
+		}
+		return m_moments;
+	}
+
+	/**
+	 * Traces the contours with the connectivity of the labeling. The outer contour starts at the first pixel of the first run.
+	 * @return outer contour followed by the inner contours
+	 */
+	public ChainCode[] contours() {
+		if (m_contours == null) {
+			assert m_holes != null : "holes haven't been searched";
+
+			final ChainCode[] contours = new ChainCode[1 + m_lastHole - m_firstHole];
+			final int w = m_labels.width;
+
+			contours[0] = ChainCode.trace(m_labels, m_start[m_firstRun], m_row[m_firstRun], true, m_eightConnected);
+			for (int i=m_firstHole; i < m_lastHole; i++) {
+				contours[1 + i - m_firstHole] = ChainCode.trace(m_labels, m_holes[i]%w, m_holes[i]/w - 1, false, m_eightConnected);
+			}
+			m_contours = contours;
+		}
+		return m_contours;
+	}
+
+	/**
+	 * Convex hull of the pixel positions. Only the first and the last pixel of each row are hull candidates.
+	 * @return hull vertices { xs, ys }, see ConvexHull
+	 */
+	public int[][] convexHull() {
+		if (m_hull == null) {
+			final int[] xs = new int[2*runCount()], ys = new int[2*runCount()];
+			int n = 0;
+
+			for (int r=m_firstRun; r < m_lastRun; ) {
+				final int y = m_row[r], left = m_start[r];
+
+				while (r + 1 < m_lastRun && m_row[r + 1] == y) r++;
+				xs[n] = left; ys[n++] = y;
+				if (m_end[r] != left) {
+					xs[n] = m_end[r]; ys[n++] = y;
+				}
+				r++;
+			}
+			m_hull = ConvexHull.monotoneChain(xs, ys, n);
+		}
+		return m_hull;
+	}
+}
@@ -0,0 +1,149 @@
+package imageprocessing.particles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Static R-tree over the bounding boxes of particles, packed with Sort-Tile-Recursive (STR).
+ * The entries of a level are sorted by the x-coordinate of their centers and cut into vertical slices,
+ * each slice is sorted by the y-coordinate and packed into nodes of NODE_SIZE entries. The nodes are packed
+ * the same way, level by level, until a single root is left.
+ * Each level is stored in flat arrays: the boxes of its nodes and the STR order of the entries below,
+ * node k covers the entries order[k*NODE_SIZE], ..., order[(k + 1)*NODE_SIZE - 1].
+ * A point or rectangle query only descends into the nodes intersecting the query: O(log n + k).
+ */
+public class ParticleIndex {
+	private static final int NODE_SIZE = 16;
+
+	private final int[][] m_boxes;	// boxes (left, top, right, bottom) of each level, level 0: particles
+	private final int[][] m_order;	// STR order of the entries of level l - 1, m_order[0] is unused
+
+	/**
+	 * Builds the index over inclusive bounding boxes
+	 * @param left
+	 * @param top
+	 * @param right
+	 * @param bottom
+	 */
+	public ParticleIndex(int[] left, int[] top, int[] right, int[] bottom) {
+		final int n = left.length;
+		final List<int[]> boxes = new ArrayList<>();
+		final List<int[]> order = new ArrayList<>();
+		int[] level = new int[4*n];
+
+		for (int i=0; i < n; i++) {
+			level[4*i] = left[i]; level[4*i + 1] = top[i]; level[4*i + 2] = right[i]; level[4*i + 3] = bottom[i];
+		}
+		boxes.add(level);
+		order.add(null);
+
+		// pack levels until a single root is left
+		for (int m=n; m > 0 && (order.size() == 1 || m > 1); ) {
+			final int[] below = level;
+			final int[] items = sortTileRecursive(below, m);
+			final int nodes = (m + NODE_SIZE - 1)/NODE_SIZE;
+
+			level = new int[4*nodes];
+			for (int k=0; k < nodes; k++) {
+				int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+				for (int e=k*NODE_SIZE; e < Math.min(m, (k + 1)*NODE_SIZE); e++) {
+					final int b = 4*items[e];
+					x0 = Math.min(x0, below[b]); y0 = Math.min(y0, below[b + 1]);
+					x1 = Math.max(x1, below[b + 2]); y1 = Math.max(y1, below[b + 3]);
+				}
+				level[4*k] = x0; level[4*k + 1] = y0; level[4*k + 2] = x1; level[4*k + 3] = y1;
+			}
+			boxes.add(level);
+			order.add(items);
+			m = nodes;
+		}
+		m_boxes = boxes.toArray(new int[0][]);
+		m_order = order.toArray(new int[0][]);
+	}
+
+	/**
+	 * Builds the index over the bounding boxes of a particle table
+	 * @param table table with the columns "left", "top", "right", "bottom"
+	 * @return index
+	 */
+	public static ParticleIndex build(ParticleTable table) {
+		final int n = table.size;
+		final int[] left = new int[n], top = new int[n], right = new int[n], bottom = new int[n];
+		final double[] l = table.column("left"), t = table.column("top"), r = table.column("right"), b = table.column("bottom");
+
+		for (int i=0; i < n; i++) {
+			left[i] = (int)l[i]; top[i] = (int)t[i]; right[i] = (int)r[i]; bottom[i] = (int)b[i];
+		}
+		return new ParticleIndex(left, top, right, bottom);
+	}
+
+	/**
+	 * Calls action for each particle whose bounding box intersects the inclusive rectangle
+	 * @param left
+	 * @param top
+	 * @param right
+	 * @param bottom
+	 * @param action consumer of particle indices
+	 */
+	public void query(int left, int top, int right, int bottom, IntConsumer action) {
+		if (m_boxes.length > 1) query(m_boxes.length - 1, 0, left, top, right, bottom, action);
+	}
+
+	/**
+	 * Calls action for each particle whose bounding box contains the point (x,y)
+	 * @param x
+	 * @param y
+	 * @param action consumer of particle indices
+	 */
+	public void query(int x, int y, IntConsumer action) {
+		query(x, y, x, y, action);
+	}
+
+	private void query(int level, int node, int left, int top, int right, int bottom, IntConsumer action) {
+		final int[] below = m_boxes[level - 1], order = m_order[level];
+		final int end = Math.min(order.length, (node + 1)*NODE_SIZE);
+
+		for (int e=node*NODE_SIZE; e < end; e++) {
+			final int c = order[e], b = 4*c;
+
+			if (below[b] <= right && below[b + 2] >= left && below[b + 1] <= bottom && below[b + 3] >= top) {
+				if (level == 1) action.accept(c);
+				else query(level - 1, c, left, top, right, bottom, action);
+			}
+		}
+	}
+
+	/**
+	 * Sorts the entries by the x-coordinate of their centers, cuts them into vertical slices of
+	 * ceil(sqrt(number of nodes)) nodes and sorts each slice by the y-coordinate of the centers
+	 * @param boxes boxes of the entries
+	 * @param m number of entries
+	 * @return entry indices in STR order
+	 */
+	private static int[] sortTileRecursive(int[] boxes, int m) {
+		final int[] items = new int[m];
+		final int nodes = (m + NODE_SIZE - 1)/NODE_SIZE;
+		final int slice = (int)Math.ceil(Math.sqrt(nodes))*NODE_SIZE;
+
+		for (int i=0; i < m; i++) items[i] = i;
+		sortByCenter(boxes, items, 0, m, 0);
+		for (int s=0; s < m; s += slice) sortByCenter(boxes, items, s, Math.min(m, s + slice), 1);
+		return items;
+	}
+
+	/**
+	 * Sorts the entries [from, to) by their doubled center coordinate (axis 0: x, 1: y)
+	 */
+	private static void sortByCenter(int[] boxes, int[] items, int from, int to, int axis) {
+		final long[] keys = new long[to - from];
+
+		for (int i=from; i < to; i++) {
+			final long c = (long)boxes[4*items[i] + axis] + boxes[4*items[i] + axis + 2];
+			keys[i - from] = (c << 32) | items[i];
+		}
+		Arrays.sort(keys);
+		for (int i=from; i < to; i++) items[i] = (int)keys[i - from];
+	}
+}
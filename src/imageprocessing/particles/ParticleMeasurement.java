@@ -0,0 +1,188 @@
+package imageprocessing.particles;
+
+import java.util.Arrays;
+import java.util.List;
+
+import imageprocessing.binary.ConnectedComponentLabeling;
+import imageprocessing.buffer.LabelImage;
+import imageprocessing.buffer.PackedBinaryImage;
+import utils.Parallel;
+
+/**
+ * Measures the particles of a label map, separated from the labeling.
+ * The runs of all particles are collected in parallel horizontal strips and sorted by particle
+ * (counting sort, raster order within each particle). Then the particles are measured in parallel:
+ * each particle only touches its own runs, and its contours if a feature needs them.
+ * Only the features of the given calculators are computed.
+ */
+public class ParticleMeasurement {
+	/**
+	 * Measures the particles with labels firstLabel, ..., firstLabel + n - 1. Other labels are ignored.
+	 * Rows of labels without pixels remain 0.
+	 * @param labels label map, 0 = background
+	 * @param firstLabel label of the first particle
+	 * @param n number of particles
+	 * @param eightConnected connectivity of the labeling, used to trace the contours
+	 * @param features feature calculators
+	 * @return particle table with the columns of the calculators, row i belongs to label firstLabel + i
+	 */
+	public static ParticleTable measure(LabelImage labels, int firstLabel, int n, boolean eightConnected, List<FeatureCalculator> features) {
+		return measure(labels, firstLabel, n, eightConnected, features, null);
+	}
+
+	/**
+	 * Measures the particles with labels firstLabel, ..., firstLabel + n - 1 and streams the rows into a report,
+	 * as soon as they are measured. Other labels are ignored. Rows of labels without pixels remain 0.
+	 * @param labels label map, 0 = background
+	 * @param firstLabel label of the first particle
+	 * @param n number of particles
+	 * @param eightConnected connectivity of the labeling, used to trace the contours
+	 * @param features feature calculators
+	 * @param report report sink or null, isn't closed
+	 * @return particle table with the columns of the calculators, row i belongs to label firstLabel + i
+	 */
+	public static ParticleTable measure(LabelImage labels, int firstLabel, int n, boolean eightConnected, List<FeatureCalculator> features,
+			ParticleReport report) {
+		final int h = labels.height;
+		final int[] ids = new int[n];
+		for (int i=0; i < n; i++) ids[i] = firstLabel + i;
+
+		final ParticleTable table = new ParticleTable(ids);
+		for (FeatureCalculator f : features) f.addColumns(table);
+		if (report != null) report.begin(table);
+
+		// runs of each strip
+		final Runs[] strips = new Runs[Parallel.stripCount(h)];
+
+		Parallel.forStrips(h, (s, top, bottom) -> {
+			strips[s] = new Runs(labels, top, bottom, firstLabel, n);
+		});
+
+		// counting sort of the runs by particle
+		final int[] firstRun = new int[n + 1];
+		for (Runs s : strips) {
+			for (int i=0; i < s.nRuns; i++) firstRun[s.particle[i] + 1]++;
+		}
+		for (int i=0; i < n; i++) firstRun[i + 1] += firstRun[i];
+
+		final int nRuns = firstRun[n];
+		final int[] row = new int[nRuns], start = new int[nRuns], end = new int[nRuns];
+		final int[] pos = Arrays.copyOf(firstRun, n);
+		for (Runs s : strips) {
+			for (int i=0; i < s.nRuns; i++) {
+				final int k = pos[s.particle[i]]++;
+				row[k] = s.row[i];
+				start[k] = s.start[i];
+				end[k] = s.end[i];
+			}
+		}
+
+		// holes, only if contours are needed
+		final boolean contours = features.stream().anyMatch(FeatureCalculator::needsContours);
+		final int[][] holes = (contours) ? findHoles(labels, firstLabel, n, !eightConnected) : new int[][] { null, new int[n + 1] };
+		final int[] holeStart = holes[0], firstHole = holes[1];
+
+		// measure particles in parallel
+		Parallel.For(0, n, i -> {
+			final boolean empty = firstRun[i] == firstRun[i + 1];
+
+			if (!empty) {
+				final Particle particle = new Particle(i, firstLabel + i, labels, eightConnected, row, start, end, firstRun[i], firstRun[i + 1],
+					holeStart, firstHole[i], firstHole[i + 1]);
+				for (FeatureCalculator f : features) f.compute(particle, table);
+			}
+			if (report != null) report.completed(i, empty);
+		});
+		return table;
+	}
+
+	/**
+	 * Finds the holes of all particles: the background regions that don't touch the image border.
+	 * The pixel above the first pixel of a hole belongs to the enclosing particle.
+	 * @param eightConnected connectivity of the background
+	 * @return { first pixels of the holes sorted by particle, index of the first hole of each particle (n + 1 entries) }
+	 */
+	private static int[][] findHoles(LabelImage labels, int firstLabel, int n, boolean eightConnected) {
+		final int w = labels.width, h = labels.height;
+		final PackedBinaryImage background = new PackedBinaryImage(w, h);
+
+		Parallel.For(0, h, v -> {
+			final int o = v*background.wordsPerLine;
+			for (int u=0, p=v*w; u < w; u++, p++) {
+				if (labels.data[p] == 0) background.data[o + (u >>> 6)] |= Long.MIN_VALUE >>> (u & 63);
+			}
+		});
+
+		final LabelImage regions = new LabelImage(w, h);
+		final int m = ConnectedComponentLabeling.label(background, regions, eightConnected);
+
+		// first pixel of each background region (labels appear in raster order) and border contact
+		final int[] first = new int[m + 1];
+		final boolean[] border = new boolean[m + 1];
+		int found = 0;
+
+		for (int v=0; v < h; v++) {
+			for (int u=0, p=v*w; u < w; u++, p++) {
+				final int b = regions.data[p];
+				if (b > found) first[found = b] = p;
+				if (b > 0 && (u == 0 || u == w - 1 || v == 0 || v == h - 1)) border[b] = true;
+			}
+		}
+
+		// counting sort of the holes by enclosing particle
+		final int[] owner = new int[m + 1];
+		final int[] firstHole = new int[n + 1];
+		for (int b=1; b <= m; b++) {
+			owner[b] = (border[b]) ? -1 : labels.data[first[b] - w] - firstLabel;
+			if (owner[b] >= 0 && owner[b] < n) firstHole[owner[b] + 1]++;
+		}
+		for (int i=0; i < n; i++) firstHole[i + 1] += firstHole[i];
+
+		final int[] holes = new int[firstHole[n]];
+		final int[] pos = Arrays.copyOf(firstHole, n);
+		for (int b=1; b <= m; b++) {
+			if (owner[b] >= 0 && owner[b] < n) holes[pos[owner[b]]++] = first[b];
+		}
+		return new int[][] { holes, firstHole };
+	}
+
+	/**
+	 * Runs of the particles in the lines [top, bottom) in raster order
+	 */
+	private static class Runs {
+		int[] particle = new int[64], row = new int[64], start = new int[64], end = new int[64];
+		int nRuns;
+
+		Runs(LabelImage labels, int top, int bottom, int firstLabel, int n) {
+			final int w = labels.width;
+
+			for (int v=top; v < bottom; v++) {
+				final int o = v*w;
+				int u = 0;
+
+				while (u < w) {
+					final int i = labels.data[o + u] - firstLabel;
+					final int s = u;
+
+					while (++u < w && labels.data[o + u] == labels.data[o + s]);
+					if (i >= 0 && i < n) add(i, v, s, u - 1);
+				}
+			}
+		}
+
+		private void add(int i, int v, int s, int e) {
+			if (nRuns == particle.length) {
+				final int k = 2*nRuns;
+				particle = Arrays.copyOf(particle, k);
+				row = Arrays.copyOf(row, k);
+				start = Arrays.copyOf(start, k);
+				end = Arrays.copyOf(end, k);
+			}
+			particle[nRuns] = i;
+			row[nRuns] = v;
+			start[nRuns] = s;
+			end[nRuns] = e;
+			nRuns++;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package imageprocessing.particles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming particle report: writes the scalar features of a particle table row by row
+ * as CSV or JSON Lines through a buffered file channel.
+ * Rows are written as soon as they have been measured, in particle order: a row is kept back only
+ * until all rows before it are complete. Hence the report never holds more than the pending rows
+ * of a parallel measurement, and a batch run produces the same file for any number of threads.
+ * Write errors don't escape the parallel measurement: the first error stops the report and is thrown by close.
+ */
+public class ParticleReport implements AutoCloseable {
+	public enum Format {
+		CSV, JSON_LINES;
+
+		/**
+		 * @param fileName report file name
+		 * @return JSON_LINES for .json and .jsonl files, CSV otherwise
+		 */
+		public static Format of(String fileName) {
+			final String name = fileName.toLowerCase();
+			return (name.endsWith(".jsonl") || name.endsWith(".json")) ? JSON_LINES : CSV;
+		}
+	}
+
+	private final WritableByteChannel m_channel;
+	private final Format m_format;
+	private final ByteBuffer m_buffer = ByteBuffer.allocateDirect(1 << 16);
+	private final StringBuilder m_row = new StringBuilder(256);
+	private ParticleTable m_table;
+	private String[] m_names;			// scalar columns of the table
+	private double[][] m_columns;
+	private byte[] m_state;				// 0: pending, 1: measured, 2: empty
+	private int m_next;					// next row to write
+	private IOException m_error;		// first write error, nothing is written after it
+
+	/**
+	 * Creates or truncates a report file
+	 * @param path report file
+	 * @param format file format
+	 * @throws IOException
+	 */
+	public ParticleReport(Path path, Format format) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), format);
+	}
+
+	/**
+	 * Creates a report on an open channel, which is closed by close
+	 * @param channel output channel
+	 * @param format file format
+	 */
+	public ParticleReport(WritableByteChannel channel, Format format) {
+		m_channel = channel;
+		m_format = format;
+	}
+
+	/**
+	 * Starts the report of a table, before its rows are measured. Writes the CSV header.
+	 * @param table table with all columns added
+	 */
+	public synchronized void begin(ParticleTable table) {
+		m_table = table;
+		m_names = table.columnNames().toArray(new String[0]);
+		m_columns = new double[m_names.length][];
+		for (int c=0; c < m_names.length; c++) m_columns[c] = table.column(m_names[c]);
+		m_state = new byte[table.size];
+		m_next = 0;
+
+		if (m_format == Format.CSV) {
+			m_row.setLength(0);
+			m_row.append("label");
+			for (String name : m_names) m_row.append(',').append(name);
+			m_row.append('\n');
+			put(m_row);
+		}
+	}
+
+	/**
+	 * Reports that row i is complete and writes all complete rows that are next in order.
+	 * May be called concurrently for different rows.
+	 * @param i particle index
+	 * @param empty true if the particle doesn't have any pixels, empty rows aren't written
+	 */
+	public synchronized void completed(int i, boolean empty) {
+		m_state[i] = (byte)((empty) ? 2 : 1);
+		while (m_next < m_state.length && m_state[m_next] != 0) {
+			if (m_state[m_next] == 1) writeRow(m_next);
+			m_next++;
+		}
+	}
+
+	/**
+	 * Writes all rows of an already measured table
+	 * @param table particle table
+	 */
+	public synchronized void write(ParticleTable table) {
+		begin(table);
+		for (int i=0; i < table.size; i++) completed(i, false);
+	}
+
+	/**
+	 * Flushes the buffer and closes the file
+	 * @throws IOException the first write error of the report, or an error of the last flush or of closing
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if (m_error == null) flush();
+		} catch (IOException e) {
+			m_error = e;
+		}
+		try {
+			m_channel.close();
+		} catch (IOException e) {
+			if (m_error == null) m_error = e;
+			else m_error.addSuppressed(e);
+		}
+		if (m_error != null) throw m_error;
+	}
+
+	private void writeRow(int i) {
+		final StringBuilder sb = m_row;
+
+		sb.setLength(0);
+		if (m_format == Format.CSV) {
+			sb.append(m_table.labels[i]);
+			for (double[] column : m_columns) {
+				sb.append(',');
+				if (!Double.isNaN(column[i]) && !Double.isInfinite(column[i])) appendNumber(sb, column[i]);
+			}
+		} else {
+			sb.append("{\"label\":").append(m_table.labels[i]);
+			for (int c=0; c < m_names.length; c++) {
+				final double v = m_columns[c][i];
+
+				sb.append(",\"").append(m_names[c]).append("\":");
+				if (Double.isNaN(v) || Double.isInfinite(v)) sb.append("null");
+				else appendNumber(sb, v);
+			}
+			sb.append('}');
+		}
+		sb.append('\n');
+		put(sb);
+	}
+
+	/**
+	 * Appends integral values without fraction
+	 */
+	private static void appendNumber(StringBuilder sb, double v) {
+		if (v == Math.rint(v) && Math.abs(v) < 1e15) sb.append((long)v);
+		else sb.append(v);
+	}
+
+	/**
+	 * Appends ASCII text to the buffer, the buffer is written to the channel when it is full.
+	 * After a write error the text is dropped.
+	 */
+	private void put(CharSequence text) {
+		if (m_error != null) return;
+		try {
+			for (int k=0; k < text.length(); k++) {
+				if (!m_buffer.hasRemaining()) flush();
+				m_buffer.put((byte)text.charAt(k));
+			}
+		} catch (IOException e) {
+			m_error = e;
+		}
+	}
+
+	private void flush() throws IOException {
+		m_buffer.flip();
+		while (m_buffer.hasRemaining()) m_channel.write(m_buffer);
+		m_buffer.clear();
+	}
+}
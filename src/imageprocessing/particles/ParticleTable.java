@@ -0,0 +1,104 @@
+package imageprocessing.particles;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Columnar particle table: one primitive array per feature, row i belongs to the i-th particle.
+ * Scalar features are double columns. Convex hulls and contours are optional shape columns for drawing.
+ * Columns are added by the feature calculators before the measurement, and different rows are written
+ * concurrently.
+ */
+public class ParticleTable {
+	public final int size;			// number of particles
+	public final int[] labels;		// label of each particle
+	private final Map<String, double[]> m_columns = new LinkedHashMap<>();
+	private int[][][] m_hulls;		// hull vertices { xs, ys } of each particle
+	private ChainCode[][] m_contours;	// outer contour and inner contours of each particle
+
+	/**
+	 * Creates a table without columns
+	 * @param labels label of each particle
+	 */
+	public ParticleTable(int[] labels) {
+		this.size = labels.length;
+		this.labels = labels;
+	}
+
+	/**
+	 * Adds a scalar column, if it doesn't exist
+	 * @param name feature name
+	 * @return column
+	 */
+	public double[] addColumn(String name) {
+		return m_columns.computeIfAbsent(name, k -> new double[size]);
+	}
+
+	/**
+	 * @param name feature name
+	 * @return column or null if the feature hasn't been measured
+	 */
+	public double[] column(String name) {
+		return m_columns.get(name);
+	}
+
+	/**
+	 * @return feature names in the order of their columns
+	 */
+	public Set<String> columnNames() {
+		return m_columns.keySet();
+	}
+
+	/**
+	 * Adds the convex hull column, if it doesn't exist
+	 */
+	public void addHulls() {
+		if (m_hulls == null) m_hulls = new int[size][][];
+	}
+
+	/**
+	 * @return true if the convex hulls have been measured
+	 */
+	public boolean hasHulls() {
+		return m_hulls != null;
+	}
+
+	/**
+	 * @param i particle index
+	 * @return hull vertices { xs, ys }
+	 */
+	public int[][] hull(int i) {
+		return m_hulls[i];
+	}
+
+	public void setHull(int i, int[][] hull) {
+		m_hulls[i] = hull;
+	}
+
+	/**
+	 * Adds the contour column, if it doesn't exist
+	 */
+	public void addContours() {
+		if (m_contours == null) m_contours = new ChainCode[size][];
+	}
+
+	/**
+	 * @return true if the contours have been traced
+	 */
+	public boolean hasContours() {
+		return m_contours != null;
+	}
+
+	/**
+	 * @param i particle index
+	 * @return outer contour followed by the inner contours
+	 */
+	public ChainCode[] contours(int i) {
+		return m_contours[i];
+	}
+
+	public void setContours(int i, ChainCode[] contours) {
+		m_contours[i] = contours;
+	}
+}
@@ -1,6 +1,8 @@
 package imageprocessing.transformation;
 
 import imageprocessing.IImageProcessor;
+import imageprocessing.buffer.BitImage;
+import imageprocessing.buffer.ByteImage;
 import org.eclipse.swt.graphics.ImageData;
 import utils.Matrix;
 import utils.Parallel;
@@ -31,18 +33,27 @@ public class AffineMapping implements IImageProcessor {
         Matrix inverse = a.inverse();
         int width = inData.width;
         int height = inData.height;
-        ImageData imageData = new ImageData(width, height, inData.depth, inData.palette);
+        ImageData imageData = new ImageData(width, height, inData.depth, inData.palette); // initialized with 0
+        final ByteImage in = ByteImage.wrapPixels(inData);
+        final ByteImage out = ByteImage.wrapPixels(imageData);
+        final BitImage inBits = (inData.depth == 1) ? BitImage.wrap(inData) : null;
+        final BitImage outBits = (inData.depth == 1) ? BitImage.wrap(imageData) : null;
+        final double[][] m = inverse.data();
 
         Parallel.For(0, height, v -> {
             for(int u = 0; u < width; u ++) {
-                final double[] t = inverse.multiply(new double[] { u, v, 1 });
-                final int uOld = (int) t[0];
-                final int vOld = (int) t[1];
+                // t = inverse*(u, v, 1)
+                final int uOld = (int) (m[0][0]*u + m[0][1]*v + m[0][2]);
+                final int vOld = (int) (m[1][0]*u + m[1][1]*v + m[1][2]);
 
                 if (uOld >= 0 && vOld >= 0 && uOld < width && vOld < height) {
-                    imageData.setPixel(u, v, inData.getPixel(uOld, vOld));
-                } else {
-                    imageData.setPixel(u, v, 0);
+                    if (out != null) {
+                        out.copyPixel(in, uOld, vOld, u, v);
+                    } else if (outBits != null) {
+                        outBits.set(u, v, inBits.get(uOld, vOld));
+                    } else {
+                        imageData.setPixel(u, v, inData.getPixel(uOld, vOld));
+                    }
                 }
             }
         });
@@ -2,6 +2,8 @@ package imageprocessing.transformation;
 
 import gui.OptionPane;
 import imageprocessing.IImageProcessor;
+import imageprocessing.buffer.BitImage;
+import imageprocessing.buffer.ByteImage;
 import org.eclipse.swt.graphics.ImageData;
 import utils.Parallel;
 
@@ -28,7 +30,11 @@ public class Rotation implements IImageProcessor {
         int newWidth  = (int) Math.round(Math.abs(oldWidth * Math.cos(rotation)) + Math.abs(oldHeight * Math.sin(rotation))); // why?
         int newHeight = (int) Math.round(Math.abs(oldWidth * Math.sin(rotation)) + Math.abs(oldHeight * Math.cos(rotation))); // why?
 
-        ImageData out = new ImageData(newWidth, newHeight, image.depth, image.palette);
+        ImageData out = new ImageData(newWidth, newHeight, image.depth, image.palette); // initialized with 0
+        final ByteImage inPixels = ByteImage.wrapPixels(image);
+        final ByteImage outPixels = ByteImage.wrapPixels(out);
+        final BitImage inBits = (image.depth == 1) ? BitImage.wrap(image) : null;
+        final BitImage outBits = (image.depth == 1) ? BitImage.wrap(out) : null;
 
         int centerW = newWidth / 2;
         int centerH = newHeight / 2;
@@ -45,9 +51,13 @@ public class Rotation implements IImageProcessor {
                 int vOld = oldHeight / 2 - (int) Math.floor(0.5 - sin * (u - centerW) + cos * (v - centerH));
 
                 if(uOld >= 0 && vOld >= 0 && uOld < oldWidth && vOld < oldHeight) {
-                    out.setPixel(u, v, image.getPixel(uOld, vOld));
-                } else {
-                    out.setPixel(u, v, 0);
+                    if (outPixels != null) {
+                        outPixels.copyPixel(inPixels, uOld, vOld, u, v);
+                    } else if (outBits != null) {
+                        outBits.set(u, v, inBits.get(uOld, vOld));
+                    } else {
+                        out.setPixel(u, v, image.getPixel(uOld, vOld));
+                    }
                 }
             }
         });
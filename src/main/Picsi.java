@@ -4,6 +4,7 @@ package main;
 import gui.MainWindow;
 import gui.TwinView;
 
+import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -16,7 +17,9 @@ import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.Shell;
 
+import files.Document;
 import files.ImageFiles;
+import imageprocessing.FloodFillingAndParticleAnalyzer;
 
 /**
  * Main method of the Picsi image viewer
@@ -42,6 +45,9 @@ public class Picsi {
 
 	public static void main(String[] args) {
 		ImageFiles.registerUserImageFiles();
+		if (args.length > 0 && args[0].equals("-particles")) {
+			System.exit(runHeadless(args));
+		}
 		Display display = new Display();
 		MainWindow picsi = new MainWindow();
 		s_shell = picsi.open(display);
@@ -51,6 +57,29 @@ public class Picsi {
 		display.dispose();
 	}
 
+	/**
+	 * Headless batch mode without display
+	 * -particles <image file> <report file>: particle analysis, the report is a CSV or JSON Lines file (.jsonl)
+	 * @param args command line arguments starting with -particles
+	 * @return exit code
+	 */
+	private static int runHeadless(String[] args) {
+		if (args.length == 3) {
+			try {
+				Document doc = new Document();
+				doc.load(args[1], ImageFiles.determinefileType(args[1]));
+				int n = FloodFillingAndParticleAnalyzer.analyzeToReport(doc.getImage(), doc.getImageType(), Paths.get(args[2]));
+				System.out.println(n + " particles written to " + args[2]);
+				return 0;
+			} catch (Exception e) {
+				System.err.println(e.getMessage());
+				return 1;
+			}
+		}
+		System.err.println("Usage: Picsi -particles <image file> <report file (.csv, .jsonl)>");
+		return 2;
+	}
+
 	/**
 	 * Create and return error message
 	 * @param msg error message
@@ -0,0 +1,68 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * FIFO queue of primitive int values (e.g. pixel indices) in a growing ring buffer.
+ * Avoids the boxing and per-element allocation of Queue<Integer>.
+ */
+public class IntQueue {
+	private int[] m_data;
+	private int m_head;		// index of the first element
+	private int m_size;		// number of elements
+
+	/**
+	 * Creates an empty queue
+	 * @param capacity initial capacity, the queue grows on demand
+	 */
+	public IntQueue(int capacity) {
+		m_data = new int[Math.max(capacity, 16)];
+	}
+
+	/**
+	 * Appends a value at the tail
+	 * @param value
+	 */
+	public void add(int value) {
+		if (m_size == m_data.length) grow();
+		int tail = m_head + m_size;
+		if (tail >= m_data.length) tail -= m_data.length;
+		m_data[tail] = value;
+		m_size++;
+	}
+
+	/**
+	 * Removes and returns the value at the head
+	 * @return first value
+	 */
+	public int poll() {
+		assert m_size > 0 : "queue is empty";
+		final int value = m_data[m_head];
+		if (++m_head == m_data.length) m_head = 0;
+		m_size--;
+		return value;
+	}
+
+	public boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Removes all values, the capacity is kept
+	 */
+	public void clear() {
+		m_head = m_size = 0;
+	}
+
+	private void grow() {
+		final int[] data = Arrays.copyOf(m_data, 2*m_data.length);
+
+		// move the wrapped part behind the old end
+		System.arraycopy(m_data, 0, data, m_data.length, m_head);
+		m_data = data;
+	}
+}
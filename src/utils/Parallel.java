@@ -7,6 +7,11 @@ import java.util.concurrent.*;
 /**
  * Parallel for loop
  * 
+ * All loops are executed in one process-wide work-stealing pool. The pool is created lazily on first use 
+ * and its size can be configured with the system property "picsi.parallelism" or with setParallelism.
+ * Nested parallel loops (e.g. a parallel loop inside the body of another parallel loop) are supported,
+ * because waiting pool threads help executing pending subtasks.
+ * 
  * @author Christoph Stamm
  *
  */
@@ -31,12 +36,116 @@ public class Parallel {
 	    void run(T data);
 	}
 	
-	private static class ReductionData<T> {
-		Future<?> future;
-		T data;
+	public static interface StripBody {
+	    void run(int strip, int top, int bottom);
+	}
+	
+	private static interface ChunkBody {
+		void run(int chunk);
+	}
+	
+	/**
+	 * Recursively splits the semi-open chunk range [lo, hi) until each task processes exactly one chunk
+	 */
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int m_lo, m_hi;
+		private final ChunkBody m_body;
+		
+		ChunkTask(int lo, int hi, ChunkBody body) {
+			m_lo = lo;
+			m_hi = hi;
+			m_body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (m_hi - m_lo == 1) {
+				m_body.run(m_lo);
+			} else {
+				final int mid = (m_lo + m_hi) >>> 1;
+				invokeAll(new ChunkTask(m_lo, mid, m_body), new ChunkTask(mid, m_hi, m_body));
+			}
+		}
 	}
 	
 	static final int nCPU = Runtime.getRuntime().availableProcessors();
+	
+	private static volatile ForkJoinPool s_pool; // lazily created shared pool
+
+	/**
+	 * Returns the shared pool. The pool is created at first use.
+	 * @return shared work-stealing pool
+	 */
+	public static ForkJoinPool getPool() {
+		ForkJoinPool pool = s_pool;
+		
+		if (pool == null) {
+			synchronized(Parallel.class) {
+				pool = s_pool;
+				if (pool == null) {
+					pool = createPool(Integer.getInteger("picsi.parallelism", nCPU));
+					s_pool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+	
+	/**
+	 * Returns the number of worker threads of the shared pool
+	 * @return pool size
+	 */
+	public static int getParallelism() {
+		return getPool().getParallelism();
+	}
+	
+	/**
+	 * Replaces the shared pool by a new pool with the given number of worker threads.
+	 * Already running loops finish in the old pool.
+	 * @param parallelism > 0
+	 */
+	public static void setParallelism(int parallelism) {
+		assert parallelism > 0 : "parallelism must be positive: " + parallelism;
+		
+		ForkJoinPool old;
+		synchronized(Parallel.class) {
+			old = s_pool;
+			s_pool = createPool(parallelism);
+		}
+		if (old != null) old.shutdown();
+	}
+	
+	private static ForkJoinPool createPool(int parallelism) {
+		return new ForkJoinPool(Math.max(1, parallelism), pool -> {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName("Parallel-" + t.getPoolIndex());
+			t.setDaemon(true); // don't prevent the application from exiting
+			return t;
+		}, null, false);
+	}
+	
+	/**
+	 * Executes body for all chunks in the semi-open range [0, nChunks) and waits for completion
+	 * @param nChunks > 0
+	 * @param body
+	 */
+	private static void invoke(int nChunks, ChunkBody body) {
+		if (nChunks == 1) {
+			// nothing to distribute
+			body.run(0);
+		} else {
+			ChunkTask task = new ChunkTask(0, nChunks, body);
+			ForkJoinPool pool = getPool();
+			
+			if (ForkJoinTask.getPool() == pool) {
+				// nested loop: run in the current worker thread and let idle workers steal
+				task.invoke();
+			} else {
+				pool.invoke(task);
+			}
+		}
+	}
 
 	/**
 	 * Parallel for each: executes the loopBody for each item in the collection
@@ -44,21 +153,18 @@ public class Parallel {
 	 * @param loopBody
 	 */
 	public static <T> void forEach(Iterable <T> collection, final LoopBody<T> loopBody) {
-	    ExecutorService executor = Executors.newFixedThreadPool(nCPU);
-	    List<Future<?>> futures  = new ArrayList<Future<?>>(nCPU);
+	    List<T> items = new ArrayList<T>();
 
 	    for (final T param : collection) {
-	    	futures.add(executor.submit(() -> loopBody.run(param) ));
+	    	items.add(param);
 	    }
+	    if (items.isEmpty()) return;
 
-        for (Future<?> f : futures) {
-        	try { 
-        		f.get();
-		    } catch (InterruptedException | ExecutionException e) { 
-		    	System.out.println(e); 
-		    }
-        }
-	    executor.shutdown();     
+	    try {
+	    	invoke(items.size(), i -> loopBody.run(items.get(i)));
+	    } catch (RuntimeException e) {
+	    	System.out.println(e);
+	    }
 	}
 
 	/**
@@ -83,58 +189,59 @@ public class Parallel {
 		
 		if (start == stop) return;
 		
-		ExecutorService executor = null;
-		List<Future<?>> futures = null;
+		final int chunkSize = chunkSize(start, stop, delta);
+		final int nChunks = (Math.abs(stop - start) + chunkSize - 1)/chunkSize;
 		
-		if (start < stop) {
-			assert delta > 0 : "delta must be positive: " + delta;
-		    int chunkSize = (stop - start + nCPU - 1)/nCPU;
-		    int rest = chunkSize%delta;
-		    if (rest != 0) chunkSize += delta - rest;
-	        final int nThreads = (stop - start + chunkSize - 1)/chunkSize;
-	        executor = Executors.newFixedThreadPool(nThreads);
-	        futures  = new ArrayList<Future<?>>(nThreads);
-	
-	        for (int i=start; i < stop; ) {
-	            final int iStart = i;
-	            i += chunkSize;
-	            final int iStop = (i < stop) ? i : stop;
-	            
-		        futures.add(executor.submit(() -> {
+		try {
+			if (start < stop) {
+				invoke(nChunks, c -> {
+					final int iStart = start + c*chunkSize;
+					final int iStop = Math.min(iStart + chunkSize, stop);
+					
 	            	for (int j = iStart; j < iStop; j += delta) 
 	            		loopBody.run(j);
-	            }));     
-		    }
-		} else {
-			// start > stop
-			assert delta < 0 : "delta must be negative: " + delta;
-		    int chunkSize = (start - stop + nCPU - 1)/nCPU;
-		    int rest = chunkSize%delta;
-		    if (rest != 0) chunkSize -= delta + rest;
-	        final int nThreads = (start - stop + chunkSize - 1)/chunkSize;
-	        executor = Executors.newFixedThreadPool(nThreads);
-	        futures  = new ArrayList<Future<?>>(nThreads);
-	
-	        for (int i=start; i > stop; ) {
-	            final int iStart = i;
-	            i -= chunkSize;
-	            final int iStop = (i > stop) ? i : stop;
-	            
-		        futures.add(executor.submit(() -> {
+				});
+			} else {
+				// start > stop
+				invoke(nChunks, c -> {
+					final int iStart = start - c*chunkSize;
+					final int iStop = Math.max(iStart - chunkSize, stop);
+					
 	            	for (int j = iStart; j > iStop; j += delta) 
 	            		loopBody.run(j);
-	            }));  
-	        }
+				});
+			}
+		} catch (RuntimeException e) {
+	    	System.out.println(e); 
 		}
+	}
 
-        for (Future<?> f : futures) {
-        	try { 
-        		f.get();
-		    } catch (InterruptedException | ExecutionException e) { 
-		    	System.out.println(e); 
-		    }
-        }
-	    executor.shutdown();     
+	/**
+	 * Parallel for: executes the loopBody for each int value in the semi-open range [start, stop)
+	 * with temporary data per chunk, e.g. line buffers, which is created in the chunk and not reduced.
+	 * @param start < stop
+	 * @param stop
+	 * @param creator initializes temporary data of a chunk
+	 * @param loopBody
+	 */
+	public static <T> void For(int start, int stop, final RedDataCreator<T> creator, final RedLoopBody<T> loopBody) {
+		if (start == stop) return;
+		
+		final int chunkSize = chunkSize(start, stop, 1);
+		final int nChunks = (stop - start + chunkSize - 1)/chunkSize;
+		
+		try {
+			invoke(nChunks, c -> {
+				final int iStart = start + c*chunkSize;
+				final int iStop = Math.min(iStart + chunkSize, stop);
+				final T data = creator.run();
+				
+	            for (int j = iStart; j < iStop; j++) 
+	            	loopBody.run(j, data);
+			});
+		} catch (RuntimeException e) {
+	    	System.out.println(e); 
+		}
 	}
 
 	/**
@@ -165,70 +272,105 @@ public class Parallel {
 		
 		if (start == stop) return;
 		
-		ExecutorService executor = null;
-		List<ReductionData<T>> redData = null;
+		final int chunkSize = chunkSize(start, stop, delta);
+		final int nChunks = (Math.abs(stop - start) + chunkSize - 1)/chunkSize;
+		final List<T> redData = new ArrayList<T>(nChunks);
+		
+		for (int c = 0; c < nChunks; c++) {
+			redData.add(creator.run());
+		}
+		
+		try {
+			if (start < stop) {
+				invoke(nChunks, c -> {
+					final int iStart = start + c*chunkSize;
+					final int iStop = Math.min(iStart + chunkSize, stop);
+					final T data = redData.get(c);
+					
+		            for (int j = iStart; j < iStop; j += delta) {
+		            	loopBody.run(j, data);
+		            }
+				});
+			} else {
+				// start > stop
+				invoke(nChunks, c -> {
+					final int iStart = start - c*chunkSize;
+					final int iStop = Math.max(iStart - chunkSize, stop);
+					final T data = redData.get(c);
+					
+		            for (int j = iStart; j > iStop; j += delta) {
+		            	loopBody.run(j, data);
+		            }
+				});
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		// reduction in chunk order
+        for (T data : redData) {
+    		if (data != null) {
+    			reducer.run(data);
+    		}
+        }
+	}
+	
+	/**
+	 * Number of strips of forStrips: about four strips per thread, so that strips of different costs are balanced
+	 * @param height number of lines
+	 * @return positive number of strips
+	 */
+	public static int stripCount(int height) {
+		final int stripHeight = stripHeight(height);
+		return Math.max(1, (height + stripHeight - 1)/stripHeight);
+	}
+
+	/**
+	 * Parallel for over horizontal strips: executes the stripBody for each strip [top, bottom) of consecutive lines
+	 * in the semi-open range [0, height). There are stripCount(height) strips, an empty image has one empty strip.
+	 * Each strip is a task of its own, hence idle threads steal the remaining strips.
+	 * @param height number of lines
+	 * @param stripBody
+	 */
+	public static void forStrips(int height, final StripBody stripBody) {
+		final int stripHeight = stripHeight(height);
+
+		try {
+			invoke(stripCount(height), s -> stripBody.run(s, Math.min(height, s*stripHeight), Math.min(height, (s + 1)*stripHeight)));
+		} catch (RuntimeException e) {
+	    	System.out.println(e); 
+		}
+	}
+
+	private static int stripHeight(int height) {
+		final int nStrips = 4*getParallelism();
+		return Math.max(1, (height + nStrips - 1)/nStrips);
+	}
+
+	/**
+	 * Computes the chunk size such that the range is split into at most getParallelism() chunks 
+	 * and each chunk size is a multiple of delta
+	 * @param start
+	 * @param stop
+	 * @param delta
+	 * @return positive chunk size
+	 */
+	private static int chunkSize(int start, int stop, int delta) {
+		final int nThreads = getParallelism();
 		
 		if (start < stop) {
 			assert delta > 0 : "delta must be positive: " + delta;
-		    int chunkSize = (stop - start + nCPU - 1)/nCPU;
+		    int chunkSize = (stop - start + nThreads - 1)/nThreads;
 		    int rest = chunkSize%delta;
 		    if (rest != 0) chunkSize += delta - rest;
-	        final int nThreads = (stop - start + chunkSize - 1)/chunkSize;
-	        executor = Executors.newFixedThreadPool(nThreads);
-	        redData  = new ArrayList<ReductionData<T>>(nThreads);
-	
-	        for (int i = start; i < stop; ) {
-	            final int iStart = i;
-	            i += chunkSize;
-	            final int iStop = (i < stop) ? i : stop;
-	            final ReductionData<T> rd = new ReductionData<T>();
-	                        
-	            rd.data = creator.run();
-		        rd.future = executor.submit(() -> {
-		            for (int j = iStart; j < iStop; j += delta) {
-		            	loopBody.run(j, rd.data);
-		            }
-		        });
-		        redData.add(rd);
-		    }
+		    return chunkSize;
 		} else {
-			// start > stop
 			assert delta < 0 : "delta must be negative: " + delta;
-		    int chunkSize = (start - stop + nCPU - 1)/nCPU;
+		    int chunkSize = (start - stop + nThreads - 1)/nThreads;
 		    int rest = chunkSize%delta;
 		    if (rest != 0) chunkSize -= delta + rest;
-	        final int nThreads = (start - stop + chunkSize - 1)/chunkSize;
-	        executor = Executors.newFixedThreadPool(nThreads);
-	        redData  = new ArrayList<ReductionData<T>>(nThreads);
-	
-	        for (int i = start; i > stop; ) {
-	            final int iStart = i;
-	            i -= chunkSize;
-	            final int iStop = (i > stop) ? i : stop;
-	            final ReductionData<T> rd = new ReductionData<T>();
-	                        
-	            rd.data = creator.run();
-		        rd.future = executor.submit(() -> {
-		            for (int j = iStart; j > iStop; j += delta) {
-		            	loopBody.run(j, rd.data);
-		            }
-		        });
-		        redData.add(rd);
-		    }
+		    return chunkSize;
 		}
-
-        for (ReductionData<T> rd : redData) {
-        	try { 
-        		rd.future.get();
-        		if (rd.data != null) {
-        			reducer.run(rd.data);
-        		}
-		    } catch (InterruptedException | ExecutionException e) { 
-				e.printStackTrace();
-		    }
-        }
-	    executor.shutdown();     
 	}
 }
-
-
@@ -0,0 +1,58 @@
+package imageprocessing.binary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.junit.jupiter.api.Test;
+
+import imageprocessing.ImageProcessing;
+import imageprocessing.binary.BinaryOperation.BinOp;
+import main.Picsi;
+
+public class BinaryOperationTest {
+	/**
+	 * Image of the given type with random pixel values 0 and 1
+	 */
+	private static ImageData random01(int width, int height, int imageType, long seed) {
+		final ImageData imageData = ImageProcessing.createImage(width, height, imageType);
+		final Random random = new Random(seed);
+
+		for (int v=0; v < height; v++) {
+			for (int u=0; u < width; u++) imageData.setPixel(u, v, random.nextInt(2));
+		}
+		return imageData;
+	}
+
+	@Test
+	public void notSwapsForegroundOfBinarizedGrayImage() {
+		// odd width: the last bytes of a line aren't covered by whole words
+		final ImageData in = random01(77, 13, Picsi.IMAGE_TYPE_GRAY, 1);
+		final ImageData out = BinaryOperation.binaryOperation(in, null, BinOp.NOT);
+
+		for (int v=0; v < in.height; v++) {
+			for (int u=0; u < in.width; u++) assertEquals(1 - in.getPixel(u, v), out.getPixel(u, v));
+		}
+	}
+
+	@Test
+	public void notSwapsForegroundOfBinaryImage() {
+		final ImageData in = random01(77, 13, Picsi.IMAGE_TYPE_BINARY, 2);
+		final ImageData out = BinaryOperation.binaryOperation(in, null, BinOp.NOT);
+
+		for (int v=0; v < in.height; v++) {
+			for (int u=0; u < in.width; u++) assertEquals(1 - in.getPixel(u, v), out.getPixel(u, v));
+		}
+	}
+
+	@Test
+	public void andNotKeepsBinarizedGrayImageBinary() {
+		final ImageData a = random01(77, 13, Picsi.IMAGE_TYPE_GRAY, 3), b = random01(77, 13, Picsi.IMAGE_TYPE_GRAY, 4);
+		final ImageData out = BinaryOperation.binaryOperation(a, b, BinOp.AND_NOT);
+
+		for (int v=0; v < a.height; v++) {
+			for (int u=0; u < a.width; u++) assertEquals(a.getPixel(u, v) & (1 - b.getPixel(u, v)), out.getPixel(u, v));
+		}
+	}
+}
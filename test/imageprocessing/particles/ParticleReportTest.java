@@ -0,0 +1,112 @@
+package imageprocessing.particles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import imageprocessing.buffer.LabelImage;
+
+public class ParticleReportTest {
+	/**
+	 * Channel that accepts a number of bytes and fails afterwards
+	 */
+	private static class FailingChannel implements WritableByteChannel {
+		final IOException m_error = new IOException("disk full");
+		int m_capacity;
+		int m_failedWrites;
+		boolean m_open = true;
+
+		FailingChannel(int capacity) {
+			m_capacity = capacity;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			if (src.remaining() > m_capacity) {
+				m_failedWrites++;
+				throw m_error;
+			}
+			m_capacity -= src.remaining();
+			final int n = src.remaining();
+			src.position(src.limit());
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return m_open;
+		}
+
+		@Override
+		public void close() {
+			m_open = false;
+		}
+	}
+
+	/**
+	 * Label image with n square particles of 3x3 pixels, labels 2, ..., n + 1
+	 */
+	private static LabelImage squares(int n) {
+		final int cols = 64, w = 4*cols, h = 4*((n + cols - 1)/cols);
+		final LabelImage labels = new LabelImage(w, h);
+
+		for (int i=0; i < n; i++) {
+			final int x0 = 4*(i%cols), y0 = 4*(i/cols);
+			for (int v=y0; v < y0 + 3; v++) {
+				for (int u=x0; u < x0 + 3; u++) labels.data[v*w + u] = i + 2;
+			}
+		}
+		return labels;
+	}
+
+	@Test
+	public void writesAllRowsInOrder() throws IOException {
+		final int n = 5000;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try (ParticleReport report = new ParticleReport(Channels.newChannel(out), ParticleReport.Format.CSV)) {
+			ParticleMeasurement.measure(squares(n), 2, n, false, Features.ALL, report);
+		}
+		final String[] lines = new String(out.toByteArray(), StandardCharsets.US_ASCII).split("\n");
+		assertEquals(n + 1, lines.length);
+		assertTrue(lines[0].startsWith("label,"));
+		for (int i=0; i < n; i++) assertTrue(lines[i + 1].startsWith((i + 2) + ","));
+	}
+
+	@Test
+	public void closeThrowsFirstWriteError() {
+		final int n = 5000;
+		final FailingChannel channel = new FailingChannel(0);
+		final ParticleReport report = new ParticleReport(channel, ParticleReport.Format.JSON_LINES);
+
+		// the write error must not escape the parallel measurement, nor stop it
+		final ParticleTable table = ParticleMeasurement.measure(squares(n), 2, n, false, Features.ALL, report);
+		assertEquals(9, table.column("area")[n - 1]);
+
+		final IOException e = assertThrows(IOException.class, report::close);
+		assertSame(channel.m_error, e);
+		assertEquals(1, channel.m_failedWrites);
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void closeThrowsErrorOfLastFlush() {
+		final FailingChannel channel = new FailingChannel(0);
+		final ParticleReport report = new ParticleReport(channel, ParticleReport.Format.CSV);
+
+		report.write(new ParticleTable(new int[] { 2, 3, 4 }));
+		assertSame(channel.m_error, assertThrows(IOException.class, report::close));
+		assertFalse(channel.isOpen());
+	}
+}